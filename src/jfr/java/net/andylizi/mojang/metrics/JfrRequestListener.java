@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将请求记录为 {@link MojangRequestEvent}.
+ *
+ * @author andylizi
+ */
+final class JfrRequestListener implements RequestListener {
+    @Override
+    public void onRequestStart(RequestTrace trace) {
+        MojangRequestEvent event = new MojangRequestEvent();
+        if(!event.isEnabled())
+            return;
+        event.begin();
+        trace.setAttachment(event);
+    }
+
+    @Override
+    public void onRequestComplete(RequestTrace trace) {
+        Object attachment = trace.getAttachment();
+        if(!(attachment instanceof MojangRequestEvent))
+            return;
+        MojangRequestEvent event = (MojangRequestEvent) attachment;
+        event.end();
+        if(!event.shouldCommit())
+            return;
+        event.endpoint = trace.getEndpoint();
+        event.method = trace.getMethod();
+        event.statusCode = trace.getStatusCode();
+        event.error = trace.getError();
+        event.connectTime = trace.getTime(RequestTrace.Phase.CONNECT, TimeUnit.NANOSECONDS);
+        event.handshakeTime = trace.getTime(RequestTrace.Phase.HANDSHAKE, TimeUnit.NANOSECONDS);
+        event.sendTime = trace.getTime(RequestTrace.Phase.SEND, TimeUnit.NANOSECONDS);
+        event.waitTime = trace.getTime(RequestTrace.Phase.WAIT, TimeUnit.NANOSECONDS);
+        event.receiveTime = trace.getTime(RequestTrace.Phase.RECEIVE, TimeUnit.NANOSECONDS);
+        event.decompressTime = trace.getDecompressTime(TimeUnit.NANOSECONDS);
+        event.bytesSent = trace.getBytesSent();
+        event.bytesReceived = trace.getBytesReceived();
+        event.bytesDecoded = trace.getBytesDecoded();
+        event.commit();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 一个Mojang API请求的JFR事件. 事件的持续时间即请求的总耗时.
+ * <p>
+ * 只能通过 {@link JfrSupport} 使用, 以免在没有 <code>jdk.jfr</code> 的JVM上加载此类.
+ * 位于以Java 11编译的 <code>src/jfr/java</code> 源码集中, 主源码集仍可以Java 8编译.
+ *
+ * @author andylizi
+ */
+@Name("net.andylizi.mojang.Request")
+@Label("Mojang API Request")
+@Category({"MojangAPI", "Network"})
+@Description("A request made through the MojangAPI transport")
+@StackTrace(false)
+public class MojangRequestEvent extends Event {
+    @Label("Endpoint")
+    public String endpoint;
+
+    @Label("Method")
+    public String method;
+
+    @Label("Status Code")
+    @Description("HTTP status code, -1 if no response was received")
+    public int statusCode;
+
+    @Label("Error")
+    @Description("Mojang error type or exception class name")
+    public String error;
+
+    @Label("Connect Time")
+    @Description("Waiting for and opening a connection; includes the TLS handshake for HttpURLConnection transports")
+    @Timespan(Timespan.NANOSECONDS)
+    public long connectTime;
+
+    @Label("TLS Handshake Time")
+    @Description("TLS handshake, recorded separately by the NIO transport only")
+    @Timespan(Timespan.NANOSECONDS)
+    public long handshakeTime;
+
+    @Label("Send Time")
+    @Description("Writing the request body")
+    @Timespan(Timespan.NANOSECONDS)
+    public long sendTime;
+
+    @Label("Time to First Byte")
+    @Timespan(Timespan.NANOSECONDS)
+    public long waitTime;
+
+    @Label("Receive Time")
+    @Description("Reading and decompressing the response body")
+    @Timespan(Timespan.NANOSECONDS)
+    public long receiveTime;
+
+    @Label("Decompress Time")
+    @Description("Time spent inflating the response body, part of the receive time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long decompressTime;
+
+    @Label("Bytes Sent")
+    @DataAmount(DataAmount.BYTES)
+    public long bytesSent;
+
+    @Label("Bytes Received")
+    @Description("Response body bytes as received, before decompression")
+    @DataAmount(DataAmount.BYTES)
+    public long bytesReceived;
+
+    @Label("Bytes Decoded")
+    @Description("Response body bytes after decompression")
+    @DataAmount(DataAmount.BYTES)
+    public long bytesDecoded;
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.andylizi.mojang.api.MojangResult;
+import net.andylizi.mojang.exception.MojangException;
+import net.andylizi.mojang.utils.Common;
+
+/**
+ * {@link Common#throwMojangException(String)} 对常见响应的分类,
+ * 以及经由 {@link MojangResult#of(MojangResult.Call)} 的 <code>try*</code> 路径.
+ *
+ * @author andylizi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorClassificationBenchmark {
+    @Param({"success", "notSecured", "unauthorized", "other"})
+    public String response;
+
+    @Param({"true", "false"})
+    public boolean stackTrace;
+
+    private String json;
+
+    @Setup
+    public void setup() {
+        switch(response){
+            case "success":
+                json = SecurityQuestionsBenchmark.JSON;
+                break;
+            case "notSecured":
+                json = "{\"error\":\"ForbiddenOperationException\",\"errorMessage\":\"Current IP not secured\"}";
+                break;
+            case "unauthorized":
+                json = "{\"error\":\"Unauthorized\",\"errorMessage\":\"The request requires user authentication\"}";
+                break;
+            default:
+                json = "{\"error\":\"IllegalArgumentException\",\"errorMessage\":\"Content is not an image\"}";
+        }
+        MojangException.setStackTraceEnabled(stackTrace);
+    }
+
+    @TearDown
+    public void tearDown() {
+        MojangException.setStackTraceEnabled(true);
+    }
+
+    @Benchmark
+    public Object classify() {
+        try {
+            Common.Common.throwMojangException(json);
+            return null;
+        } catch (MojangException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public Object classifyResult() {
+        return MojangResult.of(() -> {
+            Common.Common.throwMojangException(json);
+            return null;
+        });
+    }
+}
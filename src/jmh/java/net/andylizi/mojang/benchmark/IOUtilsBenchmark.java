@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.andylizi.mojang.utils.IOUtils;
+
+/**
+ * 读取响应体, 包括经过 {@link IOUtils#handleInputStream(HttpURLConnection)} 的gzip解压.
+ *
+ * @author andylizi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IOUtilsBenchmark {
+    @Param({"256", "4096", "65536"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private byte[] body;
+    private URL url;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] plain = new byte[size];
+        Random random = new Random(42);
+        for(int i = 0; i < plain.length; i++)
+            plain[i] = (byte) ('a' + random.nextInt(16));
+        if(gzip){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+                gz.write(plain);
+            }
+            body = out.toByteArray();
+        }else{
+            body = plain;
+        }
+        url = new URL("http://localhost/");
+    }
+
+    @Benchmark
+    public byte[] readFully() throws IOException {
+        try (InputStream in = IOUtils.handleInputStream(new StubConnection(url, body, gzip ? "gzip" : null))) {
+            return IOUtils.readFully(in);
+        }
+    }
+
+    /**
+     * 不进行网络连接, 直接返回预先准备的响应体.
+     */
+    static final class StubConnection extends HttpURLConnection {
+        private final byte[] body;
+        private final String encoding;
+
+        StubConnection(URL url, byte[] body, String encoding) {
+            super(url);
+            this.body = body;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return encoding;
+        }
+
+        @Override
+        public int getResponseCode() {
+            return HTTP_OK;
+        }
+
+        @Override
+        public void connect() {}
+
+        @Override
+        public void disconnect() {}
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+    }
+}
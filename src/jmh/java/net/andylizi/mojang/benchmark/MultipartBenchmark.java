@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.andylizi.mojang.api.skin.SkinModelType;
+import net.andylizi.mojang.api.skin.SkinUploadBody;
+import net.andylizi.mojang.utils.Common;
+
+/**
+ * 构造并写出上传皮肤所用的<code>multipart/form-data</code>请求体.
+ *
+ * @author andylizi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultipartBenchmark {
+    private byte[] skin;
+    private final CountingOutputStream sink = new CountingOutputStream();
+
+    @Setup
+    public void setup() {
+        skin = new byte[4096];
+        new Random(42).nextBytes(skin);
+    }
+
+    @Benchmark
+    public long buildAndWrite() throws IOException {
+        SkinUploadBody body = new SkinUploadBody(Common.Common.createBoundary(), SkinModelType.CLASSIC, skin);
+        body.writeTo(sink);
+        return body.getContentLength() + sink.count;
+    }
+
+    static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
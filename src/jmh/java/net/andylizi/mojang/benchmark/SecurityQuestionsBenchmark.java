@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.andylizi.mojang.api.security.SecurityQuestions;
+
+/**
+ * 安全问题的解析与序列化.
+ *
+ * @author andylizi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityQuestionsBenchmark {
+    static final String JSON = "["
+            + "{\"answer\":{\"id\":123456},\"question\":{\"id\":1,\"question\":\"What is your favorite pet's name?\"}},"
+            + "{\"answer\":{\"id\":123457},\"question\":{\"id\":2,\"question\":\"What is your favorite movie?\"}},"
+            + "{\"answer\":{\"id\":123458},\"question\":{\"id\":3,\"question\":\"What is your favorite author's last name?\"}}"
+            + "]";
+
+    private SecurityQuestions answered;
+
+    @Setup
+    public void setup() {
+        answered = new SecurityQuestions(JSON);
+        answered.answerFirst("Steve");
+        answered.answerSecond("Minecraft");
+        answered.answerThird("Persson");
+    }
+
+    @Benchmark
+    public SecurityQuestions parse() {
+        return new SecurityQuestions(JSON);
+    }
+
+    @Benchmark
+    public String toJSON() {
+        return answered.toJSON();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.andylizi.mojang.api.skin.SkinAPI;
+import net.andylizi.mojang.api.skin.SkinModelType;
+
+/**
+ * 2D皮肤预览图渲染.
+ *
+ * @author andylizi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SkinRenderBenchmark {
+    @Param({"CLASSIC", "SLIM"})
+    public SkinModelType model;
+
+    @Param({"32", "64"})
+    public int height;
+
+    private BufferedImage skin;
+    private final int[] dest = new int[16 * 32];
+
+    @Setup
+    public void setup() {
+        skin = new BufferedImage(64, height, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(42);
+        for(int y = 0; y < height; y++){
+            for(int x = 0; x < 64; x++)
+                skin.setRGB(x, y, random.nextInt());
+        }
+    }
+
+    @Benchmark
+    public BufferedImage renderImage() {
+        return SkinAPI.renderSkinPreview2D(skin, model);
+    }
+
+    @Benchmark
+    public int[] renderInto() {
+        SkinAPI.renderSkinPreview2D(skin, model, dest);
+        return dest;
+    }
+}
@@ -0,0 +1,555 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.andylizi.mojang.api.security.AnswerProvider;
+import net.andylizi.mojang.api.security.SecurityQuestions;
+import net.andylizi.mojang.exception.MojangException;
+import net.andylizi.mojang.metrics.LatencyHistogram;
+import static net.andylizi.mojang.utils.Common.*;
+
+/**
+ * 批量验证多个账户的当前IP.
+ * <p>
+ * 每个账户依次经过 {@link Stage#NEED}, {@link Stage#FETCH} 与 {@link Stage#SUBMIT} 三个阶段,
+ * 不同账户的各个阶段流水线式地并行执行, 每个阶段有单独的并发上限. 任务运行在
+ * {@link net.andylizi.mojang.utils.Common#getExecutor()} 上, 排队的账户不占用线程.
+ * 安全问题的答案来自 {@link AnswerProvider}, 例如 {@link net.andylizi.mojang.api.security.AnswerVault}.
+ * <pre>
+ * LocationSecurer securer = new LocationSecurer(new MojangClient(), vault)
+ *         .withConcurrency(LocationSecurer.Stage.SUBMIT, 4);
+ * LocationSecurer.Report report = securer.secure(sessions);
+ * </pre>
+ * 实例不可变, 线程安全.
+ *
+ * @author andylizi
+ */
+public final class LocationSecurer {
+    private final MojangClient client;
+    private final AnswerProvider answers;
+    private final int[] concurrency;
+
+    /**
+     * 各阶段的并发上限默认为: NEED 32, FETCH 16, SUBMIT 8.
+     *
+     * @param client 客户端
+     * @param answers 答案来源
+     */
+    public LocationSecurer(MojangClient client, AnswerProvider answers) {
+        this(client, answers, new int[]{32, 16, 8});
+    }
+
+    private LocationSecurer(MojangClient client, AnswerProvider answers, int[] concurrency) {
+        this.client = Objects.requireNonNull(client);
+        this.answers = Objects.requireNonNull(answers);
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * @param stage 阶段
+     * @param limit 并发上限
+     * @return 新实例
+     */
+    public LocationSecurer withConcurrency(Stage stage, int limit) {
+        if(limit <= 0)
+            throw new IllegalArgumentException("limit must be positive");
+        int[] concurrency = this.concurrency.clone();
+        concurrency[stage.ordinal()] = limit;
+        return new LocationSecurer(client, answers, concurrency);
+    }
+
+    public int getConcurrency(Stage stage) {
+        return concurrency[stage.ordinal()];
+    }
+
+    public MojangClient getClient() {
+        return client;
+    }
+
+    public AnswerProvider getAnswerProvider() {
+        return answers;
+    }
+
+    /**
+     * 验证一组账户, 等待全部完成.
+     *
+     * @param sessions 账户的会话
+     * @return 报告
+     * @throws InterruptedException 等待时被中断, 已开始的账户会继续执行
+     */
+    public Report secure(Collection<Session> sessions) throws InterruptedException {
+        return await(secureAsync(sessions));
+    }
+
+    /**
+     * 验证 {@link SessionRegistry} 中的一组账户, 等待全部完成.
+     * 每次调用前从注册表读取会话, AccessToken失效时按 {@link SessionRegistry#call(String, SessionRegistry.SessionCall)} 刷新.
+     *
+     * @param registry 会话注册表
+     * @param accounts 账户的UUID
+     * @return 报告
+     * @throws InterruptedException 等待时被中断, 已开始的账户会继续执行
+     */
+    public Report secure(SessionRegistry registry, Collection<String> accounts) throws InterruptedException {
+        return await(secureAsync(registry, accounts));
+    }
+
+    /**
+     * 异步验证一组账户.
+     *
+     * @param sessions 账户的会话
+     * @return 全部账户完成时完成的报告
+     */
+    public CompletableFuture<Report> secureAsync(Collection<Session> sessions) {
+        List<Job> jobs = new ArrayList<>(sessions.size());
+        for(Session session : sessions)
+            jobs.add(new Job(session.getUID(), session, null));
+        return start(jobs);
+    }
+
+    /**
+     * 异步验证 {@link SessionRegistry} 中的一组账户.
+     *
+     * @param registry 会话注册表
+     * @param accounts 账户的UUID
+     * @return 全部账户完成时完成的报告
+     */
+    public CompletableFuture<Report> secureAsync(SessionRegistry registry, Collection<String> accounts) {
+        Objects.requireNonNull(registry);
+        List<Job> jobs = new ArrayList<>(accounts.size());
+        for(String account : accounts)
+            jobs.add(new Job(account, null, registry));
+        return start(jobs);
+    }
+
+    private static Report await(CompletableFuture<Report> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw new AssertionError(ex.getCause());
+        }
+    }
+
+    private CompletableFuture<Report> start(List<Job> jobs) {
+        Executor executor = Common.getExecutor();
+        Run run = new Run(jobs);
+        for(Stage stage : Stage.values())
+            run.limiters.put(stage, new Limiter(executor, concurrency[stage.ordinal()]));
+        if(jobs.isEmpty())
+            run.finish();
+        for(Job job : jobs)
+            run.schedule(Stage.NEED, job, () -> need(run, job));
+        return run.future;
+    }
+
+    private void need(Run run, Job job) {
+        // 只有明确的 2xx/403 才决定下一步, 其他响应作为异常使账户失败; 401 由注册表刷新后重试
+        Boolean need = run.call(job, Stage.NEED, client::checkSecurityQuestions);
+        if(need == null)
+            return;
+        if(!need)
+            run.complete(job, Outcome.ALREADY_SECURED, null, null, null);
+        else
+            run.schedule(Stage.FETCH, job, () -> fetch(run, job));
+    }
+
+    private void fetch(Run run, Job job) {
+        SecurityQuestions questions = run.call(job, Stage.FETCH, client::fetchSecurityQuestions);
+        if(questions == null)
+            return;
+        boolean complete;
+        try {
+            complete = questions.fillAnswers(job.account, answers);
+        } catch (IOException | RuntimeException ex) {
+            run.complete(job, Outcome.FAILED, Stage.FETCH, ex, questions);
+            return;
+        }
+        if(!complete)
+            run.complete(job, Outcome.MISSING_ANSWERS, null, null, questions);
+        else
+            run.schedule(Stage.SUBMIT, job, () -> submit(run, job, questions));
+    }
+
+    private void submit(Run run, Job job, SecurityQuestions questions) {
+        Boolean success = run.call(job, Stage.SUBMIT, session -> client.submitSecurityQuestions(session, questions));
+        if(success == null)
+            return;
+        if(success)
+            run.complete(job, Outcome.SECURED, null, null, questions);
+        else
+            run.complete(job, Outcome.FAILED, Stage.SUBMIT, null, questions);
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append('{')
+                .append("client:").append(client)
+                .append(",concurrency:").append(Arrays.toString(concurrency))
+                .append('}').toString();
+    }
+
+    /**
+     * 验证的阶段.
+     */
+    public enum Stage {
+        /**
+         * 检测是否需要验证安全问题, 参见 {@link MojangClient#checkSecurityQuestions(Session)}
+         */
+        NEED,
+        /**
+         * 获取安全问题并填写答案
+         */
+        FETCH,
+        /**
+         * 提交安全问题
+         */
+        SUBMIT
+    }
+
+    /**
+     * 一个账户的最终结果.
+     */
+    public enum Outcome {
+        /**
+         * 当前IP已经验证, 无需操作
+         */
+        ALREADY_SECURED,
+        /**
+         * 提交答案成功
+         */
+        SECURED,
+        /**
+         * 答案来源中缺少部分问题的答案, 未提交
+         */
+        MISSING_ANSWERS,
+        /**
+         * 某个阶段失败, 参见 {@link Result#getFailedStage()} 与 {@link Result#getError()}
+         */
+        FAILED
+    }
+
+    /**
+     * 一个账户的验证结果.
+     */
+    public static final class Result {
+        private final String account;
+        private final Outcome outcome;
+        private final Stage failedStage;
+        private final Exception error;
+        private final SecurityQuestions questions;
+        private final long[] stageTimes;
+        private final long totalTime;
+
+        Result(String account, Outcome outcome, Stage failedStage, Exception error, SecurityQuestions questions,
+                long[] stageTimes, long totalTime) {
+            this.account = account;
+            this.outcome = outcome;
+            this.failedStage = failedStage;
+            this.error = error;
+            this.questions = questions;
+            this.stageTimes = stageTimes;
+            this.totalTime = totalTime;
+        }
+
+        /**
+         * @return 账户的UUID
+         */
+        public String getAccount() {
+            return account;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * @return 失败的阶段, 未失败时为null
+         */
+        public Stage getFailedStage() {
+            return failedStage;
+        }
+
+        /**
+         * @return 失败的原因, 未失败或提交被拒绝但没有异常时为null. 抛出的 {@link Error} 包装为 {@link ExecutionException}
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        /**
+         * @return 获取到的安全问题, 包括已填写的答案. 未获取时为null
+         */
+        public SecurityQuestions getQuestions() {
+            return questions;
+        }
+
+        /**
+         * @param stage 阶段
+         * @param unit 时间单位
+         * @return 该阶段请求所用的时间, 未执行时为-1
+         */
+        public long getStageTime(Stage stage, TimeUnit unit) {
+            long nanos = stageTimes[stage.ordinal()];
+            return nanos < 0 ? -1 : unit.convert(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @param unit 时间单位
+         * @return 从开始验证到得到结果的时间, 包括排队等待的时间
+         */
+        public long getTotalTime(TimeUnit unit) {
+            return unit.convert(totalTime, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder().append('{')
+                    .append("account:").append(account)
+                    .append(",outcome:").append(outcome);
+            if(failedStage != null)
+                builder.append(",failedStage:").append(failedStage);
+            if(error != null)
+                builder.append(",error:").append(error);
+            for(Stage stage : Stage.values()){
+                if(stageTimes[stage.ordinal()] >= 0)
+                    builder.append(',').append(stage.name().toLowerCase()).append(':')
+                            .append(getStageTime(stage, TimeUnit.MICROSECONDS)).append("us");
+            }
+            return builder.append(",total:").append(getTotalTime(TimeUnit.MICROSECONDS)).append("us")
+                    .append('}').toString();
+        }
+    }
+
+    /**
+     * 一次批量验证的报告.
+     */
+    public static final class Report {
+        private final List<Result> results;
+        private final Map<Stage, LatencyHistogram> latencies;
+        private final long elapsed;
+
+        Report(List<Result> results, Map<Stage, LatencyHistogram> latencies, long elapsed) {
+            this.results = Collections.unmodifiableList(results);
+            this.latencies = latencies;
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * @return 各账户的结果, 顺序与传入的账户相同
+         */
+        public List<Result> getResults() {
+            return results;
+        }
+
+        /**
+         * @param outcome 结果
+         * @return 得到该结果的账户数
+         */
+        public int getCount(Outcome outcome) {
+            int count = 0;
+            for(Result result : results){
+                if(result.outcome == outcome)
+                    count++;
+            }
+            return count;
+        }
+
+        /**
+         * @param stage 阶段
+         * @return 该阶段请求的延迟分布, 包括传输层限流的等待时间, 不含在本阶段排队的时间
+         */
+        public LatencyHistogram getLatency(Stage stage) {
+            return latencies.get(stage);
+        }
+
+        public long getElapsed(TimeUnit unit) {
+            return unit.convert(elapsed, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder().append('{')
+                    .append("accounts:").append(results.size());
+            for(Outcome outcome : Outcome.values())
+                builder.append(',').append(outcome.name().toLowerCase()).append(':').append(getCount(outcome));
+            for(Stage stage : Stage.values())
+                builder.append(',').append(stage.name().toLowerCase()).append(':').append(latencies.get(stage));
+            return builder.append(",elapsed:").append(getElapsed(TimeUnit.MILLISECONDS)).append("ms")
+                    .append('}').toString();
+        }
+    }
+
+    /**
+     * 一个待验证的账户.
+     */
+    private static final class Job {
+        final String account;
+        final Session session;
+        final SessionRegistry registry;
+        final long[] stageTimes = {-1, -1, -1};
+        int index;
+
+        Job(String account, Session session, SessionRegistry registry) {
+            this.account = Objects.requireNonNull(account);
+            this.session = session;
+            this.registry = registry;
+        }
+    }
+
+    /**
+     * 一次批量验证的状态.
+     */
+    private static final class Run {
+        final Map<Stage, Limiter> limiters = new EnumMap<>(Stage.class);
+        final Map<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+        final CompletableFuture<Report> future = new CompletableFuture<>();
+        final Result[] results;
+        final AtomicInteger pending;
+        final long start = System.nanoTime();
+
+        Run(List<Job> jobs) {
+            for(Stage stage : Stage.values())
+                latencies.put(stage, new LatencyHistogram());
+            for(int i = 0; i < jobs.size(); i++)
+                jobs.get(i).index = i;
+            this.results = new Result[jobs.size()];
+            this.pending = new AtomicInteger(jobs.size());
+        }
+
+        /**
+         * 执行一个阶段的请求并记录延迟.
+         *
+         * @return 结果, 失败时为null, 此时账户已完成
+         */
+        <T> T call(Job job, Stage stage, SessionRegistry.SessionCall<T> call) {
+            long begin = System.nanoTime();
+            T result = null;
+            Exception error = null;
+            try {
+                result = job.registry == null ? call.call(job.session) : job.registry.call(job.account, call);
+            } catch (IOException | MojangException | RuntimeException ex) {
+                error = ex;
+            }
+            long nanos = System.nanoTime() - begin;
+            job.stageTimes[stage.ordinal()] = nanos;
+            latencies.get(stage).record(nanos);
+            if(error != null)
+                complete(job, Outcome.FAILED, stage, error, null);
+            return result;
+        }
+
+        /**
+         * 在该阶段的队列中执行账户的下一步. 抛出的任何异常 (包括 {@link Error}) 都使账户以失败完成,
+         * 不会中断队列.
+         */
+        void schedule(Stage stage, Job job, Runnable step) {
+            limiters.get(stage).submit(() -> {
+                try {
+                    step.run();
+                } catch (Throwable t) {
+                    complete(job, Outcome.FAILED, stage, t instanceof Exception ? (Exception) t : new ExecutionException(t), null);
+                }
+            });
+        }
+
+        void complete(Job job, Outcome outcome, Stage failedStage, Exception error, SecurityQuestions questions) {
+            if(results[job.index] != null)
+                return;  // 已经完成的账户在之后的步骤中抛出了异常
+            results[job.index] = new Result(job.account, outcome, failedStage, error, questions,
+                    job.stageTimes.clone(), System.nanoTime() - start);
+            if(pending.decrementAndGet() == 0)
+                finish();
+        }
+
+        void finish() {
+            future.complete(new Report(Arrays.asList(results), latencies, System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * 限制并发数的任务队列. 超出上限的任务排队, 由正在运行的任务完成后依次执行.
+     */
+    private static final class Limiter {
+        private final Executor executor;
+        private final int limit;
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+        private int running;
+
+        Limiter(Executor executor, int limit) {
+            this.executor = executor;
+            this.limit = limit;
+        }
+
+        void submit(Runnable task) {
+            synchronized(this){
+                if(running >= limit){
+                    queue.add(task);
+                    return;
+                }
+                running++;
+            }
+            dispatch(task);
+        }
+
+        private void dispatch(Runnable task) {
+            try {
+                executor.execute(() -> drain(task));
+            } catch (RejectedExecutionException ex) {
+                drain(task);
+            }
+        }
+
+        private void drain(Runnable task) {
+            while(task != null){
+                boolean completed = false;
+                try {
+                    task.run();
+                    completed = true;
+                } finally {
+                    Runnable next;
+                    synchronized(this){
+                        next = queue.poll();
+                        if(next == null)
+                            running--;
+                    }
+                    if(completed)
+                        task = next;
+                    else if(next != null)
+                        dispatch(next);  // 任务抛出异常时, 将队列交给新的线程继续执行
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+import net.andylizi.mojang.api.security.LocationStatusCache;
+import net.andylizi.mojang.api.security.SecurityAPI;
+import net.andylizi.mojang.api.security.SecurityQuestions;
+import net.andylizi.mojang.api.skin.SkinAPI;
+import net.andylizi.mojang.api.skin.SkinModelType;
+import net.andylizi.mojang.exception.MojangException;
+import net.andylizi.mojang.exception.NotSecuredException;
+
+/**
+ * 不可变, 线程安全的多账户客户端.
+ * <p>
+ * 与 {@link SkinAPI} 和 {@link SecurityAPI} 不同, 客户端不绑定账户, 每个调用都显式传入 {@link Session},
+ * 因此一个实例可以在所有线程间共享. 所有账户共用 {@link net.andylizi.mojang.utils.Common#getTransport()}
+ * 所设置的传输层 (连接池, 限流器与断路器) 以及同一个 {@link LocationStatusCache}.
+ * 配合 {@link SessionRegistry} 管理大量账户的凭据.
+ *
+ * @author andylizi
+ */
+public final class MojangClient {
+    private final LocationStatusCache cache;
+    private final boolean coalescing;
+
+    /**
+     * 使用 {@link LocationStatusCache#SHARED}, 合并相同的并发请求.
+     */
+    public MojangClient() {
+        this(LocationStatusCache.SHARED, true);
+    }
+
+    /**
+     * @param cache 安全状态缓存, 为null时不缓存
+     * @param coalescing 是否合并相同的并发请求, 参见 {@link SecurityAPI#setRequestCoalescing(boolean)}
+     */
+    public MojangClient(LocationStatusCache cache, boolean coalescing) {
+        this.cache = cache;
+        this.coalescing = coalescing;
+    }
+
+    /**
+     * @param cache 安全状态缓存, 为null时不缓存
+     * @return 使用指定缓存的新客户端
+     */
+    public MojangClient withLocationStatusCache(LocationStatusCache cache) {
+        return new MojangClient(cache, coalescing);
+    }
+
+    /**
+     * @param coalescing 是否合并相同的并发请求
+     * @return 新客户端
+     */
+    public MojangClient withRequestCoalescing(boolean coalescing) {
+        return new MojangClient(cache, coalescing);
+    }
+
+    public LocationStatusCache getLocationStatusCache() {
+        return cache;
+    }
+
+    public boolean isRequestCoalescing() {
+        return coalescing;
+    }
+
+    /**
+     * 上传皮肤. 
+     * 
+     * @param session 会话
+     * @param data PNG皮肤文件数据
+     * @param type 皮肤类型
+     * @return 是否成功
+     * @throws java.io.IOException 发生 I/O 错误
+     * @throws java.lang.IllegalArgumentException 不是PNG文件或皮肤大小不正确
+     * @throws net.andylizi.mojang.exception.NotSecuredException 需要验证安全问题
+     * @throws net.andylizi.mojang.exception.MojangException Mojang服务器返回异常
+     * @see SkinAPI#uploadSkin(byte[], SkinModelType)
+     */
+    public boolean uploadSkin(Session session, byte[] data, SkinModelType type) throws IOException, NotSecuredException, MojangException{
+        return skin(session).uploadSkin(data, type);
+    }
+
+    /**
+     * 上传皮肤. 
+     * 
+     * @param session 会话
+     * @param file PNG皮肤文件
+     * @param type 皮肤类型
+     * @return 是否成功
+     * @throws java.io.IOException 发生 I/O 错误
+     * @throws java.lang.IllegalArgumentException 不是PNG文件或皮肤大小不正确
+     * @throws net.andylizi.mojang.exception.NotSecuredException 需要验证安全问题
+     * @throws net.andylizi.mojang.exception.MojangException Mojang服务器返回异常
+     * @see SkinAPI#uploadSkin(File, SkinModelType)
+     */
+    public boolean uploadSkin(Session session, File file, SkinModelType type) throws IOException, NotSecuredException, MojangException{
+        return skin(session).uploadSkin(file, type);
+    }
+
+    /**
+     * 重置皮肤. 
+     * 
+     * @param session 会话
+     * @return 是否成功
+     * @throws java.io.IOException 发生 I/O 错误
+     * @throws net.andylizi.mojang.exception.NotSecuredException 需要验证安全问题
+     * @throws net.andylizi.mojang.exception.MojangException Mojang服务器返回异常
+     */
+    public boolean resetSkin(Session session) throws IOException, NotSecuredException, MojangException{
+        return skin(session).resetSkin();
+    }
+
+    /**
+     * 检测是否需要验证安全问题.
+     * 
+     * @param session 会话
+     * @return 是否需要验证安全问题
+     * @throws java.io.IOException 发生 I/O 错误
+     * @see SecurityAPI#needSecurityQuestions()
+     */
+    public boolean needSecurityQuestions(Session session) throws IOException{
+        return security(session).needSecurityQuestions();
+    }
+
+    /**
+     * 检测是否需要验证安全问题, 直接抛出Mojang服务器返回的异常.
+     * 
+     * @param session 会话
+     * @return 是否需要验证安全问题
+     * @throws java.io.IOException 发生 I/O 错误
+     * @throws net.andylizi.mojang.exception.UnauthorizedException AccessToken失效
+     * @throws net.andylizi.mojang.exception.MojangException Mojang服务器返回异常
+     * @see SecurityAPI#checkSecurityQuestions()
+     */
+    public boolean checkSecurityQuestions(Session session) throws IOException, MojangException{
+        return security(session).checkSecurityQuestions();
+    }
+
+    /**
+     * 获取安全问题. 
+     * 
+     * @param session 会话
+     * @return 安全问题
+     * @throws java.io.IOException 发生 I/O 错误
+     * @throws net.andylizi.mojang.exception.MojangException Mojang服务器返回异常
+     */
+    public SecurityQuestions fetchSecurityQuestions(Session session) throws IOException, MojangException{
+        return security(session).fetchSecurityQuestions();
+    }
+
+    /**
+     * 提交安全问题. 
+     * 
+     * @param session 会话
+     * @param questions 填写完成的安全问题
+     * @return 是否成功
+     * @throws java.io.IOException 发生 I/O 错误
+     * @throws java.lang.IllegalArgumentException 安全问题未填写完成
+     * @throws net.andylizi.mojang.exception.MojangException 答案错误 / Mojang服务器返回异常
+     */
+    public boolean submitSecurityQuestions(Session session, SecurityQuestions questions) throws IOException, MojangException{
+        return security(session).submitSecurityQuestions(questions);
+    }
+
+    /**
+     * 每次调用都创建只在当前线程使用的实例, 凭据在创建时即被固定.
+     */
+    private SkinAPI skin(Session session) {
+        SkinAPI api = new SkinAPI(session);
+        api.setLocationStatusCache(cache);
+        return api;
+    }
+
+    /**
+     * 每次调用都创建只在当前线程使用的实例, 凭据在创建时即被固定.
+     */
+    private SecurityAPI security(Session session) {
+        SecurityAPI api = new SecurityAPI(Objects.requireNonNull(session).getAccessToken());
+        api.setLocationStatusCache(cache);
+        api.setRequestCoalescing(coalescing);
+        return api;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append('{')
+                .append("cache:").append(cache != null)
+                .append(",coalescing:").append(coalescing)
+                .append('}').toString();
+    }
+}
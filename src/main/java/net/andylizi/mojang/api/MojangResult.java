@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import net.andylizi.mojang.exception.MojangException;
+
+/**
+ * 一次API调用的结果: 成功, Mojang服务器返回的错误, 或传输错误.
+ * <p>
+ * 用于 <code>try*</code> 系列方法, 调用者可以直接判断结果类型而不必捕获异常.
+ * 调用期间创建的 {@link MojangException} 不记录堆栈, 在错误频繁的批量任务中创建错误结果几乎没有开销.
+ *
+ * @author andylizi
+ * @param <T> 成功时的结果类型
+ */
+public final class MojangResult<T> {
+    private final T value;
+    private final MojangException mojangError;
+    private final IOException transportError;
+
+    private MojangResult(T value, MojangException mojangError, IOException transportError) {
+        this.value = value;
+        this.mojangError = mojangError;
+        this.transportError = transportError;
+    }
+
+    /**
+     * @param <T> 结果类型
+     * @param value 结果
+     * @return 成功的结果
+     */
+    public static <T> MojangResult<T> success(T value) {
+        return new MojangResult<>(value, null, null);
+    }
+
+    /**
+     * @param <T> 结果类型
+     * @param error Mojang服务器返回的错误
+     * @return 失败的结果
+     */
+    public static <T> MojangResult<T> mojangError(MojangException error) {
+        return new MojangResult<>(null, Objects.requireNonNull(error), null);
+    }
+
+    /**
+     * @param <T> 结果类型
+     * @param error 传输错误
+     * @return 失败的结果
+     */
+    public static <T> MojangResult<T> transportError(IOException error) {
+        return new MojangResult<>(null, null, Objects.requireNonNull(error));
+    }
+
+    /**
+     * 执行调用并将其结果或异常转换为MojangResult.
+     * 原因为 {@link MojangException} 的IOException (例如请求过于频繁) 也视为Mojang错误.
+     * 调用在当前线程中执行, 期间创建的MojangException不记录堆栈.
+     *
+     * @param <T> 结果类型
+     * @param call 调用
+     * @return 结果
+     * @see MojangException#setThreadStackTraceEnabled(boolean)
+     */
+    public static <T> MojangResult<T> of(Call<T> call) {
+        boolean stackTrace = MojangException.setThreadStackTraceEnabled(false);
+        try {
+            return success(call.call());
+        } catch (MojangException ex) {
+            return mojangError(ex);
+        } catch (IOException ex) {
+            if(ex.getCause() instanceof MojangException)
+                return mojangError((MojangException) ex.getCause());
+            return transportError(ex);
+        } finally {
+            MojangException.setThreadStackTraceEnabled(stackTrace);
+        }
+    }
+
+    public boolean isSuccess() {
+        return mojangError == null && transportError == null;
+    }
+
+    public boolean isMojangError() {
+        return mojangError != null;
+    }
+
+    public boolean isTransportError() {
+        return transportError != null;
+    }
+
+    /**
+     * @param type 错误类型
+     * @return 是否为指定类型的Mojang错误, 例如 {@link net.andylizi.mojang.exception.NotSecuredException}
+     */
+    public boolean isMojangError(Class<? extends MojangException> type) {
+        return type.isInstance(mojangError);
+    }
+
+    /**
+     * @return 成功时的结果, 失败时为null
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return Mojang服务器返回的错误, 没有时为null
+     */
+    public MojangException getMojangError() {
+        return mojangError;
+    }
+
+    /**
+     * @return 传输错误, 没有时为null
+     */
+    public IOException getTransportError() {
+        return transportError;
+    }
+
+    /**
+     * @param other 失败时返回的值
+     * @return 成功时的结果, 失败时为 <code>other</code>
+     */
+    public T orElse(T other) {
+        return isSuccess() ? value : other;
+    }
+
+    /**
+     * 获得结果, 失败时抛出对应的异常.
+     *
+     * @return 成功时的结果
+     * @throws IOException 传输错误
+     * @throws MojangException Mojang服务器返回的错误
+     */
+    public T get() throws IOException, MojangException{
+        if(mojangError != null)
+            throw mojangError;
+        if(transportError != null)
+            throw transportError;
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        if(mojangError != null)
+            return "MojangError[" + mojangError.getMessage() + "]";
+        if(transportError != null)
+            return "TransportError[" + transportError + "]";
+        return "Success[" + value + "]";
+    }
+
+    /**
+     * 可能抛出异常的API调用.
+     *
+     * @param <T> 结果类型
+     */
+    @FunctionalInterface
+    public interface Call<T> {
+        T call() throws IOException, MojangException;
+    }
+}
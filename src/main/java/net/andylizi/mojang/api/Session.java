@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Objects;
+
+import net.andylizi.mojang.utils.Common;
+
+/**
+ * 一个账户的会话: Mojang账户UUID与AccessToken. 不可变.
+ * <p>
+ * 每个请求只读取一次会话, 因此更换AccessToken不会使进行中的请求混用新旧凭据.
+ * Authorization请求头与接口URL在会话中生成一次, 会话同时作为传输层请求模板的缓存键
+ * ({@link net.andylizi.mojang.transport.HttpRequest#templateKey(Object)}).
+ *
+ * @author andylizi
+ * @see SessionRegistry
+ */
+public final class Session {
+    private final String uid;
+    private final String accessToken;
+    private final String authorization;
+    private volatile String accountKey;
+    private final String skinPath;
+    private volatile CachedURL skinURL;
+
+    /**
+     * @param uid Mojang账户UUID(不带'-')
+     * @param accessToken 有效的AccessToken
+     */
+    public Session(String uid, String accessToken) {
+        this.uid = Objects.requireNonNull(uid);
+        this.accessToken = Objects.requireNonNull(accessToken);
+        this.authorization = String.format(Common.AUTHORIZATION_PROPERTY_FORMAT, accessToken);
+        this.skinPath = "/user/profile/".concat(uid).concat("/skin");
+    }
+
+    /**
+     * @return Mojang账户UUID(不带'-')
+     */
+    public String getUID() {
+        return uid;
+    }
+
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    /**
+     * @return Authorization请求头的值, 在创建会话时生成一次
+     */
+    public String getAuthorization() {
+        return authorization;
+    }
+
+    /**
+     * @return 用于按账户限流的标识, 在第一次使用时生成
+     * @see net.andylizi.mojang.utils.Common#createAccountKey(String)
+     */
+    public String getAccountKey() {
+        String key = accountKey;
+        if(key == null)
+            accountKey = key = Common.Common.createAccountKey(accessToken);
+        return key;
+    }
+
+    /**
+     * @return 该账户皮肤接口的URL. API地址不变时总是返回同一个对象
+     * @throws MalformedURLException UUID中含有非法字符
+     * @see net.andylizi.mojang.utils.Common#setApiBase(String)
+     */
+    public URL getSkinURL() throws MalformedURLException{
+        String base = Common.Common.getApiBase();
+        CachedURL cached = skinURL;
+        if(cached == null || cached.base != base)
+            skinURL = cached = new CachedURL(base, new URL(base.concat(skinPath)));
+        return cached.url;
+    }
+
+    /**
+     * @param uid 新UUID(不带'-')
+     * @return UUID不同的新会话
+     */
+    public Session withUID(String uid) {
+        return new Session(uid, accessToken);
+    }
+
+    /**
+     * @param accessToken 新AccessToken
+     * @return AccessToken不同的新会话
+     */
+    public Session withAccessToken(String accessToken) {
+        return new Session(uid, accessToken);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) 
+            return true;
+        if (obj == null || getClass() != obj.getClass()) 
+            return false;
+        final Session other = (Session) obj;
+        return uid.equals(other.uid) && accessToken.equals(other.accessToken);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * uid.hashCode() + accessToken.hashCode();
+    }
+
+    /**
+     * 不包含AccessToken.
+     */
+    @Override
+    public String toString() {
+        return new StringBuilder().append('{')
+                .append("uid:").append(uid)
+                .append('}').toString();
+    }
+
+    /**
+     * 按API地址缓存的URL.
+     */
+    private static final class CachedURL {
+        final String base;
+        final URL url;
+
+        CachedURL(String base, URL url) {
+            this.base = base;
+            this.url = url;
+        }
+    }
+}
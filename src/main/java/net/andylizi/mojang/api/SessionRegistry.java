@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import net.andylizi.mojang.exception.MojangException;
+import net.andylizi.mojang.exception.UnauthorizedException;
+
+/**
+ * 按账户 (Mojang账户UUID) 管理会话.
+ * <p>
+ * 读取会话不加锁; 更换AccessToken时只锁住账户所在的分段, 不同分段的账户互不阻塞.
+ * 刷新AccessToken的网络请求在锁外进行, 同一账户同时只有一个刷新.
+ * {@link #call(String, SessionCall)} 在调用前读取一次会话, 进行中的请求始终使用同一份凭据,
+ * 不会因为并发的更换而混用新旧AccessToken.
+ * <pre>
+ * SessionRegistry sessions = new SessionRegistry(stale -&gt; stale.withAccessToken(auth.refresh(stale)));
+ * sessions.put(new Session(uid, token));
+ * sessions.call(uid, s -&gt; client.resetSkin(s));
+ * </pre>
+ *
+ * @author andylizi
+ * @see MojangClient
+ */
+public class SessionRegistry {
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Refresh> refreshing = new ConcurrentHashMap<>();
+    private final Object[] locks;
+    private final int mask;
+    private final Refresher refresher;
+
+    /**
+     * 使用64个分段, 不自动刷新AccessToken.
+     */
+    public SessionRegistry() {
+        this(null);
+    }
+
+    /**
+     * 使用64个分段.
+     *
+     * @param refresher AccessToken失效时用于刷新, 为null时不自动刷新
+     */
+    public SessionRegistry(Refresher refresher) {
+        this(64, refresher);
+    }
+
+    /**
+     * @param stripes 分段数, 向上取整为2的幂
+     * @param refresher AccessToken失效时用于刷新, 为null时不自动刷新
+     */
+    public SessionRegistry(int stripes, Refresher refresher) {
+        if(stripes <= 0)
+            throw new IllegalArgumentException("stripes must be positive");
+        int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.locks = new Object[size];
+        for(int i = 0; i < size; i++)
+            locks[i] = new Object();
+        this.mask = size - 1;
+        this.refresher = refresher;
+    }
+
+    /**
+     * @param uid Mojang账户UUID
+     * @return 当前会话, 不存在时为null
+     */
+    public Session get(String uid) {
+        return sessions.get(uid);
+    }
+
+    /**
+     * 添加或替换账户的会话.
+     *
+     * @param session 会话
+     * @return 旧会话, 不存在时为null
+     */
+    public Session put(Session session) {
+        String uid = session.getUID();
+        synchronized(lock(uid)){
+            return sessions.put(uid, session);
+        }
+    }
+
+    /**
+     * @param uid Mojang账户UUID
+     * @return 被移除的会话, 不存在时为null
+     */
+    public Session remove(String uid) {
+        synchronized(lock(uid)){
+            return sessions.remove(uid);
+        }
+    }
+
+    /**
+     * 更换AccessToken, 仅当当前AccessToken仍为 <code>expectedToken</code> 时生效.
+     *
+     * @param uid Mojang账户UUID
+     * @param expectedToken 预期的当前AccessToken
+     * @param newToken 新AccessToken
+     * @return 更换后的当前会话, 账户不存在时为null
+     */
+    public Session rotate(String uid, String expectedToken, String newToken) {
+        Objects.requireNonNull(newToken);
+        synchronized(lock(uid)){
+            Session current = sessions.get(uid);
+            if(current == null || !current.getAccessToken().equals(expectedToken))
+                return current;
+            Session updated = current.withAccessToken(newToken);
+            sessions.put(uid, updated);
+            return updated;
+        }
+    }
+
+    /**
+     * 刷新AccessToken. 多个线程同时发现同一个AccessToken失效时只会刷新一次,
+     * 其余线程等待并得到刷新后的会话. {@link Refresher} 在锁外调用, 不阻塞同一分段的其他账户;
+     * 刷新期间会话被替换或移除时, 刷新的结果被丢弃.
+     *
+     * @param uid Mojang账户UUID
+     * @param stale 已失效的会话
+     * @return 当前会话, 账户不存在时为null
+     * @throws IOException 刷新失败, 或等待时被中断 ({@link InterruptedIOException})
+     * @throws IllegalStateException 未设置 {@link Refresher}
+     */
+    public Session refresh(String uid, Session stale) throws IOException{
+        if(refresher == null)
+            throw new IllegalStateException("No refresher");
+        while(true){
+            Session current = sessions.get(uid);
+            if(current == null || !current.equals(stale))
+                return current;
+            Refresh refresh = new Refresh(current);
+            Refresh existing = refreshing.putIfAbsent(uid, refresh);
+            if(existing == null)
+                return runRefresh(uid, refresh);
+            Session result = existing.await();
+            if(existing.stale.equals(stale))
+                return result;
+            // 正在进行的刷新针对的是另一个会话, 完成后重新检查
+        }
+    }
+
+    private Session runRefresh(String uid, Refresh refresh) throws IOException{
+        try {
+            Session result = sessions.get(uid);
+            if(result != null && result.equals(refresh.stale)){
+                Session updated = Objects.requireNonNull(refresher.refresh(result));
+                if(!updated.getUID().equals(uid))
+                    throw new IllegalStateException("Refresher changed UID: " + uid + " -> " + updated.getUID());
+                synchronized(lock(uid)){
+                    result = sessions.get(uid);
+                    if(result != null && result.equals(refresh.stale)){
+                        sessions.put(uid, updated);
+                        result = updated;
+                    }
+                }
+            }
+            refresh.future.complete(result);
+            return result;
+        } catch (IOException | RuntimeException | Error ex) {
+            refresh.future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            refreshing.remove(uid, refresh);
+        }
+    }
+
+    /**
+     * 以账户的当前会话执行调用. 设置了 {@link Refresher} 时,
+     * 遇到 {@link UnauthorizedException} 会刷新AccessToken并重试一次.
+     *
+     * @param <T> 结果类型
+     * @param uid Mojang账户UUID
+     * @param call 调用
+     * @return 结果
+     * @throws IOException 发生 I/O 错误
+     * @throws MojangException Mojang服务器返回异常
+     * @throws IllegalArgumentException 账户不存在
+     */
+    public <T> T call(String uid, SessionCall<T> call) throws IOException, MojangException{
+        Session session = sessions.get(uid);
+        if(session == null)
+            throw new IllegalArgumentException("Unknown account: " + uid);
+        try {
+            return call.call(session);
+        } catch (UnauthorizedException ex) {
+            if(refresher == null)
+                throw ex;
+            Session refreshed = refresh(uid, session);
+            if(refreshed == null || refreshed.equals(session))
+                throw ex;
+            return call.call(refreshed);
+        }
+    }
+
+    /**
+     * @return 所有账户的UUID
+     */
+    public Set<String> accounts() {
+        return sessions.keySet();
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private Object lock(String uid) {
+        int h = uid.hashCode();
+        return locks[(h ^ (h >>> 16)) & mask];
+    }
+
+    /**
+     * 一个账户正在进行的刷新.
+     */
+    private static final class Refresh {
+        final Session stale;
+        final CompletableFuture<Session> future = new CompletableFuture<>();
+
+        Refresh(Session stale) {
+            this.stale = stale;
+        }
+
+        /**
+         * 等待刷新完成. 失败时每个等待者得到各自的异常, 原因为刷新抛出的异常.
+         */
+        Session await() throws IOException{
+            try {
+                return future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for token refresh");
+            } catch (ExecutionException ex) {
+                throw new IOException("Token refresh failed", ex.getCause());
+            }
+        }
+    }
+
+    /**
+     * 刷新失效的AccessToken, 例如向Yggdrasil认证服务器请求refresh.
+     */
+    @FunctionalInterface
+    public interface Refresher {
+        /**
+         * @param stale 已失效的会话
+         * @return 新会话, UUID必须相同
+         * @throws IOException 刷新失败
+         */
+        Session refresh(Session stale) throws IOException;
+    }
+
+    /**
+     * 使用会话的API调用.
+     *
+     * @param <T> 结果类型
+     */
+    @FunctionalInterface
+    public interface SessionCall<T> {
+        T call(Session session) throws IOException, MojangException;
+    }
+}
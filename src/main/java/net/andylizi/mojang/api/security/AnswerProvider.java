@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api.security;
+
+import java.io.IOException;
+
+/**
+ * 安全问题答案的来源.
+ *
+ * @author andylizi
+ * @see SecurityQuestions#fillAnswers(String, AnswerProvider)
+ * @see AnswerVault
+ */
+@FunctionalInterface
+public interface AnswerProvider {
+    /**
+     * @param account 账户, 通常为Mojang账户UUID
+     * @param questionID 问题ID, 即 {@link SecurityQuestions.Question#questionID}
+     * @return 答案, 未知时为null
+     * @throws IOException 读取答案时发生 I/O 错误
+     */
+    String getAnswer(String account, int questionID) throws IOException;
+}
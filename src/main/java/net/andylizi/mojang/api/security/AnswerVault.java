@@ -0,0 +1,441 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api.security;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 基于内存映射文件的安全问题答案库, 按账户与 {@link SecurityQuestions.Question#questionID} 存放答案.
+ * <p>
+ * 文件由16字节的文件头与依次追加的记录组成, 整数均为大端序:
+ * <pre>
+ * 文件头: int 魔数 "MJAV" | int 版本 | long 记录区末尾的偏移量
+ * 记录:   u8 账户长度 | u16 答案长度 (0xFFFF表示删除) | int questionID | 账户 (UTF-8) | 答案 (UTF-8)
+ * </pre>
+ * 修改与删除都追加新记录, 同一键以最后一条为准. 打开时扫描一遍记录, 在堆上建立开放寻址的哈希索引,
+ * 每个键只占一个 <code>long</code> (32位哈希与32位偏移量), 查找时只在哈希相同时才读取映射的文件.
+ * 文件头中的偏移量在记录写完之后才更新, 因此进程在写入中途崩溃时, 未完成的记录在下次打开时被忽略.
+ * 记录与文件头写入同一个映射, 两者之间不强制写入存储设备, 操作系统崩溃或断电时不保证一致性,
+ * 调用 {@link #force()} 可以缩小可能丢失的范围.
+ * <p>
+ * 答案以明文存放, 新建的文件只有所有者可以读写. 打开期间持有文件锁, 其他进程无法同时打开同一个文件.
+ * 查找可以并发进行, 写入互斥. 文件大小不能超过2GB.
+ *
+ * @author andylizi
+ * @see SecurityQuestions#fillAnswers(String, AnswerProvider)
+ */
+public class AnswerVault implements AnswerProvider, Closeable {
+    private static final int MAGIC = 0x4D4A4156;  // MJAV
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 7;
+    private static final int MAX_ACCOUNT_LENGTH = 0xFF;
+    private static final int MAX_ANSWER_LENGTH = 0xFFFE;
+    private static final int DELETED = 0xFFFF;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    /**
+     * 本进程中已打开的文件. 关闭同一文件的另一个描述符会释放本进程持有的文件锁,
+     * 因此同一进程内的重复打开必须在打开文件之前拒绝.
+     */
+    private static final Set<String> OPEN_FILES = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final String path;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private MappedByteBuffer map;
+    private int end;
+    private long[] index;
+    private int entries;
+    private int size;
+    private boolean closed;
+
+    /**
+     * 打开答案库, 文件不存在时创建.
+     *
+     * @param file 文件
+     * @throws IOException 发生 I/O 错误或文件格式错误
+     */
+    public AnswerVault(File file) throws IOException {
+        create(file);
+        this.path = file.getCanonicalPath();
+        if(!OPEN_FILES.add(path))
+            throw new IOException("Answer vault is already in use: " + file);
+        boolean success = false;
+        RandomAccessFile raf = null;
+        try {
+            this.file = raf = new RandomAccessFile(file, "rw");
+            this.channel = raf.getChannel();
+            FileLock fileLock;
+            try {
+                fileLock = channel.tryLock();
+            } catch (OverlappingFileLockException ex) {
+                fileLock = null;
+            }
+            if(fileLock == null)
+                throw new IOException("Answer vault is already in use: " + file);
+            long length = channel.size();
+            if(length > Integer.MAX_VALUE)
+                throw new IOException("Answer vault too large: " + file);
+            if(length == 0){
+                map(INITIAL_CAPACITY);
+                map.putInt(0, MAGIC);
+                map.putInt(4, VERSION);
+                setEnd(HEADER_SIZE);
+            }else{
+                if(length < HEADER_SIZE)
+                    throw new IOException("Not an answer vault: " + file);
+                map((int) length);
+                if(map.getInt(0) != MAGIC)
+                    throw new IOException("Not an answer vault: " + file);
+                if(map.getInt(4) != VERSION)
+                    throw new IOException("Unsupported answer vault version: " + map.getInt(4));
+                long end = map.getLong(8);
+                if(end < HEADER_SIZE || end > length)
+                    throw new IOException("Corrupt answer vault: " + file);
+                this.end = (int) end;
+            }
+            this.index = new long[1024];
+            scan();
+            success = true;
+        } finally {
+            if(!success){
+                OPEN_FILES.remove(path);
+                if(raf != null)
+                    raf.close();
+            }
+        }
+    }
+
+    /**
+     * @param account 账户, 通常为Mojang账户UUID
+     * @param questionID 问题ID
+     * @return 答案, 不存在时为null
+     * @throws IOException 答案库已关闭
+     */
+    @Override
+    public String getAnswer(String account, int questionID) throws IOException {
+        byte[] key = account.getBytes(UTF_8);
+        int hash = hash(key, questionID);
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            int offset = find(key, questionID, hash);
+            if(offset == 0)
+                return null;
+            int answerLength = map.getShort(offset + 1) & 0xFFFF;
+            if(answerLength == DELETED)
+                return null;
+            return readString(offset + RECORD_HEADER_SIZE + key.length, answerLength);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 存入一个答案, 覆盖原有的答案.
+     *
+     * @param account 账户, 通常为Mojang账户UUID
+     * @param questionID 问题ID
+     * @param answer 答案, 为null时删除
+     * @throws IOException 发生 I/O 错误
+     * @throws IllegalArgumentException 账户或答案过长
+     */
+    public void putAnswer(String account, int questionID, String answer) throws IOException {
+        byte[] key = account.getBytes(UTF_8);
+        if(key.length > MAX_ACCOUNT_LENGTH)
+            throw new IllegalArgumentException("account too long");
+        byte[] value = answer == null ? null : answer.getBytes(UTF_8);
+        if(value != null && value.length > MAX_ANSWER_LENGTH)
+            throw new IllegalArgumentException("answer too long");
+        int hash = hash(key, questionID);
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            int old = find(key, questionID, hash);
+            if(value == null && (old == 0 || (map.getShort(old + 1) & 0xFFFF) == DELETED))
+                return;
+            int offset = append(key, questionID, value);
+            index(hash, offset, old);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 存入一组安全问题中已填写的答案.
+     *
+     * @param account 账户, 通常为Mojang账户UUID
+     * @param questions 已回答的安全问题
+     * @throws IOException 发生 I/O 错误
+     */
+    public void putAnswers(String account, SecurityQuestions questions) throws IOException {
+        for(SecurityQuestions.Question question : questions.getQuestions()){
+            if(question.isComeplete())
+                putAnswer(account, question.questionID, question.getAnswer());
+        }
+    }
+
+    /**
+     * @param account 账户
+     * @param questionID 问题ID
+     * @return 答案是否存在并已删除
+     * @throws IOException 发生 I/O 错误
+     */
+    public boolean removeAnswer(String account, int questionID) throws IOException {
+        lock.writeLock().lock();
+        try {
+            int before = size;
+            putAnswer(account, questionID, null);
+            return size != before;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return 答案的数量
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 将修改写入存储设备. 写入过程中操作系统崩溃时, 文件头可能先于记录写入.
+     *
+     * @throws IOException 答案库已关闭
+     */
+    public void force() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            map.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 写入修改并关闭文件. 映射的内存在被垃圾回收之前不会释放.
+     *
+     * @throws IOException 发生 I/O 错误
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if(closed)
+                return;
+            closed = true;
+            map.force();
+            map = null;
+            index = null;
+            try {
+                file.close();
+            } finally {
+                OPEN_FILES.remove(path);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append('{')
+                .append("size:").append(size)
+                .append(",bytes:").append(end)
+                .append('}').toString();
+    }
+
+    /**
+     * 以只有所有者可以读写的权限创建文件.
+     */
+    private static void create(File file) throws IOException {
+        Path path = file.toPath();
+        if(Files.exists(path))
+            return;
+        try {
+            try {
+                Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            } catch (UnsupportedOperationException ex) {
+                Files.createFile(path);
+                if(!(file.setReadable(false, false) && file.setReadable(true, true)
+                        && file.setWritable(false, false) && file.setWritable(true, true)))
+                    throw new IOException("Unable to restrict permissions of " + file);
+            }
+        } catch (FileAlreadyExistsException ex) {
+            // 另一个进程同时创建了文件, 由文件锁决定谁可以使用
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if(closed)
+            throw new IOException("Answer vault closed");
+    }
+
+    private void map(int capacity) throws IOException {
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void setEnd(int end) {
+        this.end = end;
+        map.putLong(8, end);
+    }
+
+    /**
+     * 扫描全部记录并建立索引.
+     */
+    private void scan() throws IOException {
+        int offset = HEADER_SIZE;
+        while(offset < end){
+            if(end - offset < RECORD_HEADER_SIZE)
+                throw new IOException("Corrupt answer vault at " + offset);
+            int accountLength = map.get(offset) & 0xFF;
+            int answerLength = map.getShort(offset + 1) & 0xFFFF;
+            int questionID = map.getInt(offset + 3);
+            int next = offset + RECORD_HEADER_SIZE + accountLength + (answerLength == DELETED ? 0 : answerLength);
+            if(next > end)
+                throw new IOException("Corrupt answer vault at " + offset);
+            byte[] key = new byte[accountLength];
+            for(int i = 0; i < accountLength; i++)
+                key[i] = map.get(offset + RECORD_HEADER_SIZE + i);
+            int hash = hash(key, questionID);
+            index(hash, offset, find(key, questionID, hash));
+            offset = next;
+        }
+    }
+
+    private int append(byte[] key, int questionID, byte[] value) throws IOException {
+        int length = RECORD_HEADER_SIZE + key.length + (value == null ? 0 : value.length);
+        if((long) end + length > Integer.MAX_VALUE)
+            throw new IOException("Answer vault full");
+        if(end + length > map.capacity())
+            map((int) Math.min(Integer.MAX_VALUE, Math.max((long) map.capacity() * 2, (long) end + length)));
+        int offset = end;
+        map.position(offset);
+        map.put((byte) key.length);
+        map.putShort((short) (value == null ? DELETED : value.length));
+        map.putInt(questionID);
+        map.put(key);
+        if(value != null)
+            map.put(value);
+        setEnd(offset + length);
+        return offset;
+    }
+
+    /**
+     * @return 键所在记录的偏移量, 不存在时为0
+     */
+    private int find(byte[] key, int questionID, int hash) {
+        long[] index = this.index;
+        int mask = index.length - 1;
+        for(int i = hash & mask; ; i = (i + 1) & mask){
+            long entry = index[i];
+            if(entry == 0)
+                return 0;
+            int offset = (int) entry;
+            if((int) (entry >>> 32) == hash && matches(offset, key, questionID))
+                return offset;
+        }
+    }
+
+    /**
+     * 将键指向新的记录.
+     *
+     * @param old 原先的记录, 不存在时为0
+     */
+    private void index(int hash, int offset, int old) {
+        boolean deleted = (map.getShort(offset + 1) & 0xFFFF) == DELETED;
+        boolean wasLive = old != 0 && (map.getShort(old + 1) & 0xFFFF) != DELETED;
+        size += (deleted ? 0 : 1) - (wasLive ? 1 : 0);
+        if(old == 0 && ++entries * 2 > index.length)
+            rehash(index.length * 2);
+        long[] index = this.index;
+        int mask = index.length - 1;
+        for(int i = hash & mask; ; i = (i + 1) & mask){
+            long entry = index[i];
+            if(entry == 0 || (int) entry == old){
+                index[i] = (long) hash << 32 | offset;
+                return;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] index = new long[capacity];
+        int mask = capacity - 1;
+        for(long entry : this.index){
+            if(entry == 0)
+                continue;
+            int i = (int) (entry >>> 32) & mask;
+            while(index[i] != 0)
+                i = (i + 1) & mask;
+            index[i] = entry;
+        }
+        this.index = index;
+    }
+
+    private boolean matches(int offset, byte[] key, int questionID) {
+        if((map.get(offset) & 0xFF) != key.length || map.getInt(offset + 3) != questionID)
+            return false;
+        for(int i = 0; i < key.length; i++){
+            if(map.get(offset + RECORD_HEADER_SIZE + i) != key[i])
+                return false;
+        }
+        return true;
+    }
+
+    private String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for(int i = 0; i < length; i++)
+            bytes[i] = map.get(offset + i);
+        return new String(bytes, UTF_8);
+    }
+
+    private static int hash(byte[] key, int questionID) {
+        int hash = 0x811C9DC5;
+        for(byte b : key)
+            hash = (hash ^ b) * 0x01000193;
+        hash = (hash ^ questionID) * 0x01000193;
+        return hash ^ hash >>> 16;
+    }
+}
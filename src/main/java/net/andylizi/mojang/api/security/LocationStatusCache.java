@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api.security;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按AccessToken缓存当前IP是否需要验证安全问题.
+ * <p>
+ * 缓存项在TTL过期后失效; 收到 {@link net.andylizi.mojang.exception.NotSecuredException}
+ * 或成功提交安全问题时会自动更新. 请求失败 (如AccessToken失效或服务器错误) 时不会缓存. 缓存项的数量有上限, 达到上限时不再缓存新的AccessToken.
+ *
+ * @author andylizi
+ * @see SecurityAPI#needSecurityQuestions()
+ */
+public class LocationStatusCache {
+    /**
+     * SecurityAPI与SkinAPI默认共享的缓存.
+     */
+    public static final LocationStatusCache SHARED = new LocationStatusCache(1, TimeUnit.MINUTES);
+
+    /**
+     * 缓存项数量超过此值时清理过期项.
+     */
+    private static final int PURGE_THRESHOLD = 4096;
+
+    /**
+     * 两次清理之间的最短间隔
+     */
+    private static final long PURGE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 缓存项的最大数量
+     */
+    private static final int MAX_ENTRIES = 65536;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong nextPurge = new AtomicLong(System.nanoTime());
+    private volatile long ttl;
+
+    /**
+     * @param ttl 缓存有效期
+     * @param unit 时间单位
+     */
+    public LocationStatusCache(long ttl, TimeUnit unit) {
+        setTTL(ttl, unit);
+    }
+
+    /**
+     * 设置缓存有效期. 不影响已缓存的项.
+     *
+     * @param ttl 缓存有效期, 为0时不缓存
+     * @param unit 时间单位
+     */
+    public void setTTL(long ttl, TimeUnit unit) {
+        if(ttl < 0)
+            throw new IllegalArgumentException("ttl must not be negative");
+        this.ttl = unit.toNanos(ttl);
+    }
+
+    /**
+     * @param unit 时间单位
+     * @return 缓存有效期
+     */
+    public long getTTL(TimeUnit unit) {
+        return unit.convert(ttl, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 获得缓存的状态.
+     *
+     * @param accessToken AccessToken
+     * @return 是否需要验证安全问题, 未缓存或已过期时返回null
+     */
+    public Boolean get(String accessToken) {
+        Entry entry = entries.get(accessToken);
+        if(entry == null)
+            return null;
+        if(System.nanoTime() - entry.expiry >= 0){
+            entries.remove(accessToken, entry);
+            return null;
+        }
+        return entry.needSecurityQuestions;
+    }
+
+    /**
+     * 缓存状态.
+     *
+     * @param accessToken AccessToken
+     * @param needSecurityQuestions 是否需要验证安全问题
+     */
+    public void put(String accessToken, boolean needSecurityQuestions) {
+        Objects.requireNonNull(accessToken);
+        long ttl = this.ttl;
+        if(ttl == 0)
+            return;
+        if(entries.size() >= PURGE_THRESHOLD){
+            long now = System.nanoTime();
+            long next = nextPurge.get();
+            if(now - next >= 0 && nextPurge.compareAndSet(next, now + PURGE_INTERVAL))
+                purge();
+            if(entries.size() >= MAX_ENTRIES && !entries.containsKey(accessToken))
+                return;
+        }
+        entries.put(accessToken, new Entry(needSecurityQuestions, System.nanoTime() + ttl));
+    }
+
+    /**
+     * 使缓存的状态失效.
+     *
+     * @param accessToken AccessToken
+     */
+    public void invalidate(String accessToken) {
+        if(accessToken != null)
+            entries.remove(accessToken);
+    }
+
+    /**
+     * 清空缓存.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private void purge() {
+        long now = System.nanoTime();
+        for(Iterator<Entry> it = entries.values().iterator(); it.hasNext();){
+            if(now - it.next().expiry >= 0)
+                it.remove();
+        }
+    }
+
+    private static final class Entry {
+        final boolean needSecurityQuestions;
+        final long expiry;
+
+        Entry(boolean needSecurityQuestions, long expiry) {
+            this.needSecurityQuestions = needSecurityQuestions;
+            this.expiry = expiry;
+        }
+    }
+}
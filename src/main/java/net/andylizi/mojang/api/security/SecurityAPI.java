@@ -19,12 +19,19 @@ package net.andylizi.mojang.api.security;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
-import net.andylizi.mojang.utils.IOUtils;
+import net.andylizi.mojang.api.MojangResult;
 import net.andylizi.mojang.exception.MojangException;
+import net.andylizi.mojang.exception.NotSecuredException;
+import net.andylizi.mojang.exception.TooManyRequestsException;
+import net.andylizi.mojang.exception.UnauthorizedException;
+import net.andylizi.mojang.transport.HttpRequest;
+import net.andylizi.mojang.transport.HttpResponse;
+import net.andylizi.mojang.transport.RequestBody;
+import net.andylizi.mojang.utils.SingleFlight;
 import static net.andylizi.mojang.utils.Common.*;
 /**
  * 安全相关API.
@@ -32,13 +39,28 @@ import static net.andylizi.mojang.utils.Common.*;
  * @author andylizi
  */
 public class SecurityAPI {
-    private static final String SECURITY_QUESTION_URL = "https://api.mojang.com/user/security/location";
-    private static final String SECURITY_QUESTION_FETCH_URL = "https://api.mojang.com/user/security/challenges";
+    private static final String SECURITY_QUESTION_PATH = "/user/security/location";
+    private static final String SECURITY_QUESTION_FETCH_PATH = "/user/security/challenges";
+    
+    /**
+     * 所有实例共享, 键为端点与AccessToken
+     */
+    private static final SingleFlight<String> FLIGHTS = new SingleFlight<>();
     
     /**
      * AccessToken
      */
-    private transient String accessToken;
+    private transient volatile String accessToken;
+    
+    /**
+     * 安全状态缓存, 为null时不缓存
+     */
+    private volatile LocationStatusCache cache = LocationStatusCache.SHARED;
+    
+    /**
+     * 是否合并相同的并发请求
+     */
+    private volatile boolean coalescing = true;
 
     /**
      * @param accessToken 有效的AccessToken
@@ -48,48 +70,151 @@ public class SecurityAPI {
     }
 
     /**
-     * 更新AccessToken. 
+     * 更新AccessToken. 旧AccessToken的缓存状态将被清除. 
      * 
      * @param accessToken 新AccessToken
      */
-    public void updateAccessToken(String accessToken) {
+    public synchronized void updateAccessToken(String accessToken) {
+        String old = this.accessToken;
         this.accessToken = Objects.requireNonNull(accessToken);
+        if(cache != null)
+            cache.invalidate(old);
+    }
+    
+    /**
+     * 设置 {@link #needSecurityQuestions()} 所用的缓存. 
+     * 默认为 {@link LocationStatusCache#SHARED}. 
+     * 
+     * @param cache 缓存, 为null时不缓存
+     */
+    public void setLocationStatusCache(LocationStatusCache cache) {
+        this.cache = cache;
+    }
+    
+    /**
+     * 设置是否合并相同的并发请求. 
+     * 开启时 (默认), 同一AccessToken同时发起的多个 {@link #needSecurityQuestions()} 
+     * 或 {@link #fetchSecurityQuestions()} 只会发出一个请求, 其结果或异常由所有调用者共享. 
+     * 
+     * @param coalescing 是否合并
+     */
+    public void setRequestCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
     }
     
     /**
      * 检测是否需要验证安全问题.
+     * 结果将在 {@link LocationStatusCache} 中缓存一段时间. 
      * 
      * @return 是否需要验证安全问题
-     * @throws java.io.IOException 发生 I/O 错误
+     * @throws java.io.IOException 发生 I/O 错误, 或Mojang服务器返回了错误. 
+     *         后者的cause为对应的 {@link MojangException}, 例如请求过于频繁时为 {@link TooManyRequestsException}, 
+     *         AccessToken失效时为 {@link UnauthorizedException}
+     * @see #checkSecurityQuestions()
+     * @see #setRequestCoalescing(boolean)
      */
     public boolean needSecurityQuestions() throws IOException{
-        HttpURLConnection conn = Common.createHttpURLConnection(new URL(String.format(SECURITY_QUESTION_URL)));
-        conn.setRequestMethod("GET");
-        conn.setRequestProperty("Authorization ", String.format(AUTHORIZATION_PROPERTY_FORMAT, accessToken));
-        conn.connect();
-        return conn.getResponseCode() == HttpURLConnection.HTTP_FORBIDDEN;
+        try {
+            return checkSecurityQuestions();
+        } catch (MojangException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+    
+    /**
+     * 检测是否需要验证安全问题, 与 {@link #needSecurityQuestions()} 相同, 但直接抛出Mojang服务器返回的异常. 
+     * 只有 <code>2xx</code> (不需要) 与 <code>403 Forbidden</code> (需要) 会被缓存, 
+     * 其他状态码均视为失败, 不影响缓存. 
+     * 
+     * @return 是否需要验证安全问题
+     * @throws java.io.IOException 发生 I/O 错误
+     * @throws net.andylizi.mojang.exception.UnauthorizedException AccessToken失效
+     * @throws net.andylizi.mojang.exception.TooManyRequestsException 请求过于频繁
+     * @throws net.andylizi.mojang.exception.MojangException Mojang服务器返回异常
+     * @see #setRequestCoalescing(boolean)
+     */
+    public boolean checkSecurityQuestions() throws IOException, MojangException{
+        String accessToken = this.accessToken;
+        LocationStatusCache cache = this.cache;
+        if(cache != null){
+            Boolean cached = cache.get(accessToken);
+            if(cached != null)
+                return cached;
+        }
+        if(!coalescing)
+            return requestLocationStatus(accessToken, cache);
+        return FLIGHTS.execute("security/location\0" + accessToken, () -> requestLocationStatus(accessToken, cache), null);
+    }
+    
+    private static boolean requestLocationStatus(String accessToken, LocationStatusCache cache) throws IOException, MojangException{
+        HttpRequest request = new HttpRequest("GET", Common.createApiURL(SECURITY_QUESTION_PATH))
+                .endpoint("security/location")
+                .account(Common.createAccountKey(accessToken))
+                .header("Authorization", String.format(AUTHORIZATION_PROPERTY_FORMAT, accessToken));
+        try (HttpResponse response = Common.getTransport().execute(request)) {
+            int status = response.getStatusCode();
+            boolean result;
+            if(status >= HttpURLConnection.HTTP_OK && status < HttpURLConnection.HTTP_MULT_CHOICE)
+                result = false;
+            else if(status == HttpURLConnection.HTTP_FORBIDDEN)
+                result = true;
+            else
+                throw unexpectedStatus(response);
+            if(cache != null)
+                cache.put(accessToken, result);
+            return result;
+        }
+    }
+    
+    /**
+     * 将检测安全状态时的异常响应转换为对应的Mojang异常, 响应体中没有错误信息时按状态码推断. 
+     */
+    private static MojangException unexpectedStatus(HttpResponse response) throws IOException{
+        try {
+            Common.readMojangResponse(response, null);
+        } catch (MojangException ex) {
+            return ex;
+        }
+        int status = response.getStatusCode();
+        if(status == HttpURLConnection.HTTP_UNAUTHORIZED)
+            return new UnauthorizedException();
+        return new MojangException("UnexpectedResponse", "Unexpected response code: " + status);
     }
     
     /**
      * 获取安全问题. 
+     * 合并的请求中每个调用者都会得到一份独立的 {@link SecurityQuestions}, 可以放心填写答案. 
      * 
      * @return 安全问题
      * @throws java.io.IOException 发生 I/O 错误
      * @throws net.andylizi.mojang.exception.MojangException Mojang服务器返回异常
+     * @see #setRequestCoalescing(boolean)
      */
     public SecurityQuestions fetchSecurityQuestions() throws IOException, RuntimeException, MojangException{
-        URL url = new URL(SECURITY_QUESTION_FETCH_URL);
-        HttpURLConnection conn = Common.createHttpURLConnection(url);
-        conn.setDoInput(true);
-        conn.setRequestMethod("GET");
-        conn.setRequestProperty("Accept", "*/*");
-        conn.setRequestProperty("Accept-Encoding", "gzip");
-        conn.setRequestProperty("Authorization ", String.format(AUTHORIZATION_PROPERTY_FORMAT, accessToken));
-        conn.connect();
-        
-        String result = new String(IOUtils.readFully(IOUtils.handleInputStream(conn)), UTF_8);
-        Common.throwMojangException(result);
-        return new SecurityQuestions(result);
+        String accessToken = this.accessToken;
+        LocationStatusCache cache = this.cache;
+        if(!coalescing)
+            return requestSecurityQuestions(accessToken, cache);
+        return FLIGHTS.execute("security/challenges\0" + accessToken, () -> requestSecurityQuestions(accessToken, cache), SecurityQuestions::copy);
+    }
+    
+    private static SecurityQuestions requestSecurityQuestions(String accessToken, LocationStatusCache cache) throws IOException, MojangException{
+        HttpRequest request = new HttpRequest("GET", Common.createApiURL(SECURITY_QUESTION_FETCH_PATH))
+                .endpoint("security/challenges")
+                .header("Accept", "*/*")
+                .header("Accept-Encoding", "gzip")
+                .account(Common.createAccountKey(accessToken))
+                .header("Authorization", String.format(AUTHORIZATION_PROPERTY_FORMAT, accessToken));
+        try (HttpResponse response = Common.getTransport().execute(request)) {
+            SecurityQuestions questions = Common.readMojangResponse(response, SecurityQuestions.ADAPTER);
+            if(questions == null)
+                throw new IOException("Unexpected response code: " + response.getStatusCode());
+            return questions;
+        } catch (NotSecuredException ex) {
+            if(cache != null)
+                cache.invalidate(accessToken);
+            throw ex;
+        }
     }
     
     /**
@@ -105,22 +230,90 @@ public class SecurityAPI {
         if(!questions.isComplete())
             throw new IllegalArgumentException("Questions incompleted");
         byte[] data = questions.toJSON().getBytes(UTF_8);
+        String accessToken = this.accessToken;
+        LocationStatusCache cache = this.cache;
 
-        HttpURLConnection conn = Common.createHttpURLConnection(new URL(String.format(SECURITY_QUESTION_URL)));
-        conn.setDoInput(true);
-        conn.setDoOutput(true);
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Accept", "*/*");
-        conn.setRequestProperty("Accept-Encoding", "gzip");
-        conn.setRequestProperty("Authorization ", String.format(AUTHORIZATION_PROPERTY_FORMAT, accessToken));
-        conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
-        conn.setRequestProperty("Content-Length", String.valueOf(data.length));
-        conn.connect();
-        conn.getOutputStream().write(data);
-        
-        if(conn.getResponseCode() == HttpURLConnection.HTTP_NO_CONTENT)
-            return true;
-        Common.throwMojangException(new String(IOUtils.readFully(IOUtils.handleInputStream(conn)), UTF_8));
-        return false;
+        HttpRequest request = new HttpRequest("POST", Common.createApiURL(SECURITY_QUESTION_PATH))
+                .endpoint("security/location")
+                .header("Accept", "*/*")
+                .header("Accept-Encoding", "gzip")
+                .account(Common.createAccountKey(accessToken))
+                .header("Authorization", String.format(AUTHORIZATION_PROPERTY_FORMAT, accessToken))
+                .body(RequestBody.create("application/json; charset=utf-8", data));
+        try (HttpResponse response = Common.getTransport().execute(request)) {
+            if(response.getStatusCode() == HttpURLConnection.HTTP_NO_CONTENT){
+                if(cache != null)
+                    cache.put(accessToken, false);
+                return true;
+            }
+            Common.readMojangResponse(response, null);
+            return false;
+        } catch (NotSecuredException ex) {
+            if(cache != null)
+                cache.invalidate(accessToken);
+            throw ex;
+        }
+    }
+    
+    /**
+     * 检测是否需要验证安全问题, 以结果代替异常. 
+     * 
+     * @return 结果. 请求过于频繁时为 {@link TooManyRequestsException} 错误, AccessToken失效时为 {@link UnauthorizedException} 错误
+     * @see #needSecurityQuestions()
+     */
+    public MojangResult<Boolean> tryNeedSecurityQuestions(){
+        return MojangResult.of(this::needSecurityQuestions);
+    }
+    
+    /**
+     * 获取安全问题, 以结果代替异常. 
+     * 
+     * @return 结果
+     * @see #fetchSecurityQuestions()
+     */
+    public MojangResult<SecurityQuestions> tryFetchSecurityQuestions(){
+        return MojangResult.of(this::fetchSecurityQuestions);
+    }
+    
+    /**
+     * 提交安全问题, 以结果代替异常. 
+     * 
+     * @param questions 填写完成的安全问题
+     * @return 结果, 成功时值为true
+     * @throws java.lang.IllegalArgumentException 安全问题未填写完成
+     * @see #submitSecurityQuestions(SecurityQuestions)
+     */
+    public MojangResult<Boolean> trySubmitSecurityQuestions(SecurityQuestions questions) throws IllegalArgumentException{
+        return MojangResult.of(() -> submitSecurityQuestions(questions));
+    }
+    
+    /**
+     * 异步检测是否需要验证安全问题.
+     * 
+     * @return 是否需要验证安全问题. 异常结果与 {@link #needSecurityQuestions()} 相同
+     * @see net.andylizi.mojang.utils.Common#setExecutor(java.util.concurrent.Executor)
+     */
+    public CompletableFuture<Boolean> needSecurityQuestionsAsync(){
+        return Common.async(this::needSecurityQuestions);
+    }
+    
+    /**
+     * 异步获取安全问题. 
+     * 
+     * @return 安全问题. 异常结果与 {@link #fetchSecurityQuestions()} 相同
+     */
+    public CompletableFuture<SecurityQuestions> fetchSecurityQuestionsAsync(){
+        return Common.async(this::fetchSecurityQuestions);
+    }
+    
+    /**
+     * 异步提交安全问题. 
+     * 
+     * @param questions 填写完成的安全问题
+     * @return 是否成功. 异常结果与 {@link #submitSecurityQuestions(SecurityQuestions)} 相同
+     */
+    public CompletableFuture<Boolean> submitSecurityQuestionsAsync(SecurityQuestions questions){
+        Objects.requireNonNull(questions);
+        return Common.async(() -> submitSecurityQuestions(questions));
     }
 }
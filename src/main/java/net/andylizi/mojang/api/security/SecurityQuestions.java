@@ -22,6 +22,7 @@ import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.Serializable;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -38,6 +39,11 @@ import net.andylizi.mojang.api.security.SecurityQuestions.Question.QuestionAdapt
  */
 public class SecurityQuestions implements Serializable{
     protected static final QuestionAdapter QUESTION_ADAPTER = new QuestionAdapter();
+    
+    /**
+     * 安全问题列表 (JSON数组) 的TypeAdapter. 
+     */
+    public static final Adapter ADAPTER = new Adapter();
 
     private Question[] questions;
     
@@ -57,19 +63,27 @@ public class SecurityQuestions implements Serializable{
      */
     public SecurityQuestions(String json) {
         try {
-            List<Question> list = new ArrayList<>(3);
-            try (JsonReader reader = new JsonReader(new StringReader(json))) {
-                reader.beginArray();
-                while(reader.hasNext())
-                    list.add(QUESTION_ADAPTER.read(reader));
-                reader.endArray();
-            }
-            questions = list.toArray(new Question[0]);
+            questions = read(new StringReader(json));
         } catch (IOException ex) {
             throw new AssertionError("are you kidding me? is StringWriter!");
         }
     }
 
+    /**
+     * 从Reader中读取JSON并转换为安全问题. 
+     * @param json JSON
+     * @throws IOException 发生 I/O 错误或JSON格式错误
+     */
+    public SecurityQuestions(Reader json) throws IOException {
+        questions = read(json);
+    }
+
+    private static Question[] read(Reader json) throws IOException {
+        try (JsonReader reader = new JsonReader(json)) {
+            return ADAPTER.read(reader).questions;
+        }
+    }
+
     /**
      * 得到问题列表.
      * @return 安全问题列表
@@ -87,6 +101,22 @@ public class SecurityQuestions implements Serializable{
         return questions[index];
     }
     
+    /**
+     * 复制这组安全问题, 包括已填写的答案.
+     * @return 副本
+     */
+    public SecurityQuestions copy() {
+        Question[] copy = new Question[questions.length];
+        for(int i = 0; i < copy.length; i++){
+            try {
+                copy[i] = (Question) questions[i].clone();
+            } catch (CloneNotSupportedException ex) {
+                throw new AssertionError(ex);
+            }
+        }
+        return new SecurityQuestions(copy);
+    }
+    
     /**
      * 设置指定序号的安全问题的回答
      * @param i 序号
@@ -124,6 +154,22 @@ public class SecurityQuestions implements Serializable{
         answer(2, answer);
     }
     
+    /**
+     * 从答案来源中按 {@link Question#questionID} 填写答案, 已有的答案会被覆盖, 来源中没有的答案保持不变. 
+     * @param account 账户, 通常为Mojang账户UUID
+     * @param provider 答案来源
+     * @return 问题是否全部填写完成
+     * @throws IOException 读取答案时发生 I/O 错误
+     */
+    public boolean fillAnswers(String account, AnswerProvider provider) throws IOException{
+        for(Question question : questions){
+            String answer = provider.getAnswer(account, question.questionID);
+            if(answer != null && !answer.isEmpty())
+                question.answer(answer);
+        }
+        return isComplete();
+    }
+    
     /**
      * 问题是否全部填写完成. 
      * @return 是否全部填写完成
@@ -139,10 +185,7 @@ public class SecurityQuestions implements Serializable{
     public String toJSON(){
         StringWriter sw = new StringWriter();
         try (JsonWriter writer = new JsonWriter(sw)) {
-            writer.beginArray();
-            for(Question question : questions)
-                QUESTION_ADAPTER.write(writer, question);
-            writer.endArray();
+            ADAPTER.write(writer, this);
         } catch (IOException ex) {
             throw new AssertionError("are you kidding me? is StringWriter!");
         }
@@ -179,6 +222,28 @@ public class SecurityQuestions implements Serializable{
         return hash;
     }
 
+    public static class Adapter extends TypeAdapter<SecurityQuestions>{
+        private Adapter(){};
+        
+        @Override
+        public void write(JsonWriter writer, SecurityQuestions obj) throws IOException {
+            writer.beginArray();
+            for(Question question : obj.questions)
+                QUESTION_ADAPTER.write(writer, question);
+            writer.endArray();
+        }
+
+        @Override
+        public SecurityQuestions read(JsonReader reader) throws IOException {
+            List<Question> list = new ArrayList<>(3);
+            reader.beginArray();
+            while(reader.hasNext())
+                list.add(QUESTION_ADAPTER.read(reader));
+            reader.endArray();
+            return new SecurityQuestions(list.toArray(new Question[list.size()]));
+        }
+    }
+
     /**
      * 一个问题.
      */
@@ -217,6 +282,14 @@ public class SecurityQuestions implements Serializable{
             this.answer = answer;
         }
         
+        /**
+         * 得到已填写的答案
+         * @return 答案, 未回答时为null
+         */
+        public String getAnswer() {
+            return answer;
+        }
+        
         /**
          * 判断问题是否回答完毕
          * @return 问题是否回答完毕
@@ -293,6 +366,8 @@ public class SecurityQuestions implements Serializable{
                                     case "question":
                                         question = reader.nextString();
                                         break;
+                                    default:
+                                        reader.skipValue();
                                 }
                             }
                             reader.endObject();
@@ -307,10 +382,14 @@ public class SecurityQuestions implements Serializable{
                                     case "answer":
                                         answer = reader.nextString();
                                         break;
+                                    default:
+                                        reader.skipValue();
                                 }
                             }
                             reader.endObject();
                             break;
+                        default:
+                            reader.skipValue();
                     }
                 }
                 reader.endObject();
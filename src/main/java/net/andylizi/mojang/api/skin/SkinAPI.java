@@ -17,24 +17,23 @@
  */
 package net.andylizi.mojang.api.skin;
 
-import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.Objects;
-import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.concurrent.CompletableFuture;
 
+import net.andylizi.mojang.api.MojangResult;
+import net.andylizi.mojang.api.Session;
+import net.andylizi.mojang.api.security.LocationStatusCache;
 import net.andylizi.mojang.exception.MojangException;
 import net.andylizi.mojang.exception.NotSecuredException;
+import net.andylizi.mojang.transport.HttpRequest;
+import net.andylizi.mojang.transport.HttpResponse;
 import net.andylizi.mojang.utils.IOUtils;
 import static net.andylizi.mojang.utils.Common.*;
 
@@ -44,42 +43,65 @@ import static net.andylizi.mojang.utils.Common.*;
  * @author andylizi
  */
 public class SkinAPI {
-    private static final String SKIN_URL = "https://api.mojang.com/user/profile/%s/skin";
 
     /**
-     * Mojang账户UUID
+     * Mojang账户UUID与AccessToken, 每个请求只读取一次
      */
-    private String uid;
-    
+    private volatile Session session;
+
     /**
-     * AccessToken
+     * 收到 {@link NotSecuredException} 时需要更新的安全状态缓存, 可以为null
      */
-    private transient String accessToken;
+    private volatile LocationStatusCache cache = LocationStatusCache.SHARED;
 
     /**
      * @param uid Mojang账户UUID(不带'-')
      * @param accessToken 有效的AccessToken
      */
     public SkinAPI(String uid, String accessToken) {
-        this.uid = uid;
-        this.accessToken = accessToken;
+        this(new Session(uid, accessToken));
+    }
+
+    /**
+     * @param session 会话
+     */
+    public SkinAPI(Session session) {
+        this.session = Objects.requireNonNull(session);
     }
 
     /**
      * 更新UUID. 
      * @param uid 新UUID(不带'-')
      */
-    public void updateUID(String uid) {
-        this.uid = Objects.requireNonNull(uid);
+    public synchronized void updateUID(String uid) {
+        this.session = session.withUID(uid);
     }
 
     /**
-     * 更新AccessToken. 
+     * 更新AccessToken. 进行中的请求仍使用旧AccessToken. 
      * 
      * @param accessToken 新AccessToken
      */
-    public void updateAccessToken(String accessToken) {
-        this.accessToken = Objects.requireNonNull(accessToken);
+    public synchronized void updateAccessToken(String accessToken) {
+        this.session = session.withAccessToken(accessToken);
+    }
+
+    /**
+     * @return 当前会话
+     */
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * 设置收到 {@link NotSecuredException} 时需要使其失效的安全状态缓存,
+     * 应与同一账户的 {@link net.andylizi.mojang.api.security.SecurityAPI} 所用的缓存相同.
+     * 默认为 {@link LocationStatusCache#SHARED}.
+     *
+     * @param cache 缓存, 为null时不更新
+     */
+    public void setLocationStatusCache(LocationStatusCache cache) {
+        this.cache = cache;
     }
 
     /**
@@ -89,44 +111,15 @@ public class SkinAPI {
      * @param type 皮肤类型
      * @return 是否成功
      * @throws java.io.IOException 发生 I/O 错误
+     * @throws java.lang.IllegalArgumentException 不是PNG文件或皮肤大小不正确
      * @throws net.andylizi.mojang.exception.NotSecuredException 需要验证安全问题
      * @throws net.andylizi.mojang.exception.MojangException Mojang服务器返回异常
      */
     public boolean uploadSkin(byte[] data, SkinModelType type) throws IOException, NotSecuredException, MojangException{
         Objects.requireNonNull(data);
         Objects.requireNonNull(type);
-        
-        URL url = new URL(String.format(SKIN_URL, uid));
-        final String boundary = Common.createBoundary();
-        HttpURLConnection conn = Common.createHttpURLConnection(url);
-        conn.setDoInput(true);
-        conn.setDoOutput(true);
-        conn.setRequestMethod("PUT");
-        conn.setRequestProperty("Accept", "*/*");
-        conn.setRequestProperty("Accept-Encoding", "gzip");
-        conn.setRequestProperty("Authorization ", String.format(AUTHORIZATION_PROPERTY_FORMAT, accessToken));
-        conn.setRequestProperty("Content-Length", String.valueOf(data.length));
-        conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=".concat(boundary));
-        conn.connect();
-        
-        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(conn.getOutputStream(), UTF_8))) {
-            writer.write("--".concat(boundary).concat("\r\n"));
-            writer.write("Content-Disposition: form-data; name=\"model\"\r\n");
-            writer.write("\r\n");
-            writer.write(type.toString().concat("\r\n"));
-            writer.write("--".concat(boundary).concat("\r\n"));
-            writer.write("Content-Disposition: form-data; name=\"file\"; filename=\"dummy.png\"\r\n");
-            writer.write("Content-Type: image/png\r\n");
-            writer.write("\r\n");
-            writer.flush();
-            conn.getOutputStream().write(data);
-            writer.write("\r\n--".concat(boundary).concat("--"));
-        }
-
-        if(conn.getResponseCode() == HttpURLConnection.HTTP_NO_CONTENT)
-            return true;
-        Common.throwMojangException(new String(IOUtils.readFully(IOUtils.handleInputStream(conn)), UTF_8));
-        return false;
+        checkSkinHeader(SkinPngHeader.read(data));
+        return uploadSkin(new SkinUploadBody(Common.createBoundary(), type, data));
     }
     
     /**
@@ -136,6 +129,7 @@ public class SkinAPI {
      * @param type 皮肤类型
      * @return 是否成功
      * @throws java.io.IOException 发生 I/O 错误
+     * @throws java.lang.IllegalArgumentException 不是PNG文件或皮肤大小不正确
      * @throws net.andylizi.mojang.exception.NotSecuredException 需要验证安全问题
      * @throws net.andylizi.mojang.exception.MojangException Mojang服务器返回异常
      */
@@ -151,25 +145,134 @@ public class SkinAPI {
      * @return 是否成功
      * @throws java.io.FileNotFoundException 文件不存在
      * @throws java.io.IOException 发生 I/O 错误
+     * @throws java.lang.IllegalArgumentException 不是PNG文件或皮肤大小不正确
      * @throws net.andylizi.mojang.exception.NotSecuredException 需要验证安全问题
      * @throws net.andylizi.mojang.exception.MojangException Mojang服务器返回异常
      */
     public boolean uploadSkin(File file, SkinModelType type) throws FileNotFoundException, IOException, NotSecuredException, MojangException{
-        return uploadSkin(new BufferedInputStream(new FileInputStream(file)), type);
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(type);
+        SkinUploadBody body = new SkinUploadBody(Common.createBoundary(), type, file);
+        checkSkinHeader(SkinPngHeader.read(file));
+        return uploadSkin(body);
+    }
+    
+    private boolean uploadSkin(SkinUploadBody body) throws IOException, NotSecuredException, MojangException{
+        Session session = this.session;
+        String accessToken = session.getAccessToken();
+        HttpRequest request = new HttpRequest("PUT", session.getSkinURL())
+                .endpoint("skin")
+                .header("Accept", "*/*")
+                .header("Accept-Encoding", "gzip")
+                .account(session.getAccountKey())
+                .header("Authorization", session.getAuthorization())
+                .templateKey(session)
+                .body(body);
+        try (HttpResponse response = Common.getTransport().execute(request)) {
+            if(response.getStatusCode() == HttpURLConnection.HTTP_NO_CONTENT)
+                return true;
+            Common.readMojangResponse(response, null);
+            return false;
+        } catch (NotSecuredException ex) {
+            LocationStatusCache cache = this.cache;
+            if(cache != null)
+                cache.invalidate(accessToken);
+            throw ex;
+        }
     }
     
     public boolean resetSkin() throws IOException, NotSecuredException, MojangException{
-        URL url = new URL(String.format(SKIN_URL, uid));
-        HttpURLConnection conn = Common.createHttpURLConnection(url);
-        conn.setRequestMethod("DELETE");
-        conn.setRequestProperty("Accept-Encoding", "gzip");
-        conn.setRequestProperty("Authorization ", String.format(AUTHORIZATION_PROPERTY_FORMAT, accessToken));
-        conn.connect();
-        
-        if(conn.getResponseCode() == HttpURLConnection.HTTP_NO_CONTENT)
-            return true;
-        Common.throwMojangException(new String(IOUtils.readFully(IOUtils.handleInputStream(conn)), UTF_8));
-        return false;
+        Session session = this.session;
+        String accessToken = session.getAccessToken();
+        HttpRequest request = new HttpRequest("DELETE", session.getSkinURL())
+                .endpoint("skin")
+                .header("Accept-Encoding", "gzip")
+                .account(session.getAccountKey())
+                .header("Authorization", session.getAuthorization())
+                .templateKey(session);
+        try (HttpResponse response = Common.getTransport().execute(request)) {
+            if(response.getStatusCode() == HttpURLConnection.HTTP_NO_CONTENT)
+                return true;
+            Common.readMojangResponse(response, null);
+            return false;
+        } catch (NotSecuredException ex) {
+            LocationStatusCache cache = this.cache;
+            if(cache != null)
+                cache.invalidate(accessToken);
+            throw ex;
+        }
+    }
+    
+    /**
+     * 异步上传皮肤. 
+     * 
+     * @param data PNG皮肤文件数据
+     * @param type 皮肤类型
+     * @return 是否成功. 异常结果与 {@link #uploadSkin(byte[], SkinModelType)} 相同
+     * @see net.andylizi.mojang.utils.Common#setExecutor(java.util.concurrent.Executor)
+     */
+    public CompletableFuture<Boolean> uploadSkinAsync(byte[] data, SkinModelType type){
+        Objects.requireNonNull(data);
+        Objects.requireNonNull(type);
+        return Common.async(() -> uploadSkin(data, type));
+    }
+    
+    /**
+     * 异步上传皮肤. 
+     * 
+     * @param file PNG皮肤文件
+     * @param type 皮肤类型
+     * @return 是否成功. 异常结果与 {@link #uploadSkin(File, SkinModelType)} 相同
+     */
+    public CompletableFuture<Boolean> uploadSkinAsync(File file, SkinModelType type){
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(type);
+        return Common.async(() -> uploadSkin(file, type));
+    }
+    
+    /**
+     * 异步重置皮肤. 
+     * 
+     * @return 是否成功. 异常结果与 {@link #resetSkin()} 相同
+     */
+    public CompletableFuture<Boolean> resetSkinAsync(){
+        return Common.async(this::resetSkin);
+    }
+    
+    /**
+     * 上传皮肤, 以结果代替异常. 
+     * 
+     * @param data PNG皮肤文件数据
+     * @param type 皮肤类型
+     * @return 结果, 成功时值为true
+     * @throws java.lang.IllegalArgumentException 不是PNG文件或皮肤大小不正确
+     * @see #uploadSkin(byte[], SkinModelType)
+     */
+    public MojangResult<Boolean> tryUploadSkin(byte[] data, SkinModelType type) throws IllegalArgumentException{
+        return MojangResult.of(() -> uploadSkin(data, type));
+    }
+    
+    /**
+     * 上传皮肤, 以结果代替异常. 
+     * 
+     * @param file PNG皮肤文件
+     * @param type 皮肤类型
+     * @return 结果, 成功时值为true. 文件不存在时为传输错误
+     * @throws java.lang.IllegalArgumentException 不是PNG文件或皮肤大小不正确
+     * @see #uploadSkin(File, SkinModelType)
+     */
+    public MojangResult<Boolean> tryUploadSkin(File file, SkinModelType type) throws IllegalArgumentException{
+        return MojangResult.of(() -> uploadSkin(file, type));
+    }
+    
+    /**
+     * 重置皮肤, 以结果代替异常. 
+     * 
+     * @return 结果, 成功时值为true
+     * @see #resetSkin()
+     */
+    public MojangResult<Boolean> tryResetSkin(){
+        return MojangResult.of(this::resetSkin);
     }
     
     /**
@@ -181,41 +284,37 @@ public class SkinAPI {
      * @throws java.lang.IllegalArgumentException 皮肤大小不正确. 
      */
     public static BufferedImage renderSkinPreview2D(BufferedImage skin, SkinModelType modelType) throws IllegalArgumentException{
-        if (!checkSkinSize(skin)) 
-            throw new IllegalArgumentException("Invalid image size: " + skin.getWidth() + "*" + skin.getHeight());
-        boolean slim = modelType == SkinModelType.SLIM;
-
-        BufferedImage preview = new BufferedImage(16, 32, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = preview.createGraphics();
-        drawImage(g2d, skin.getSubimage(8, 8, 8, 8), 4, 0); //head
-        drawImage(g2d, skin.getSubimage(20, 20, 8, 12), 4, 8); //body
-        drawImage(g2d, skin.getSubimage(44, 20, (slim ? 3 : 4), 12), (slim ? 1 : 0), 8); //right arm
-        drawImage(g2d, skin.getSubimage(44, 20, (slim ? 3 : 4), 12), 12, 8); //left arm
-        drawImage(g2d, skin.getSubimage(4, 20, 4, 12), 4, 20); //left leg
-        drawImage(g2d, skin.getSubimage(4, 20, 4, 12), 8, 20); //right leg
-
-        drawImage(g2d, skin.getSubimage(40, 8, 8, 8), 4, 0); //hat
-        if (skin.getHeight() == 64) {
-            drawImage(g2d, skin.getSubimage(36, 52, (slim ? 3 : 4), 12), 12, 8); //left arm
-            drawImage(g2d, skin.getSubimage(20, 52, 4, 12), 8, 20); //left leg
-            
-            drawImage(g2d, skin.getSubimage(20, 20 + 16, 8, 12), 4, 8); //body wear
-            drawImage(g2d, skin.getSubimage(52, 20 + 16 + 16, (slim ? 3 : 4), 12), 12, 8); //left arm wear
-            drawImage(g2d, skin.getSubimage(44, 20 + 16, (slim ? 3 : 4), 12), (slim ? 1 : 0), 8); //right arm wear
-            drawImage(g2d, skin.getSubimage(4, 52, 4, 12), 8, 20); //left leg wear
-            drawImage(g2d, skin.getSubimage(4, 20 + 16, 4, 12), 4, 20); //right leg wear
-        }
-
-        g2d.dispose();
-        return preview;
+        return SkinRenderer.render(skin, modelType);
     }
     
-    private static Graphics2D drawImage(Graphics2D g, Image image, int x, int y) {
-        g.drawImage(image, x, y, null);
-        return g;
+    /**
+     * 将2D的皮肤预览图渲染到调用者提供的缓冲区中.
+     * 
+     * @param skin 皮肤
+     * @param modelType 皮肤类型
+     * @param dest 长度至少为 16*32 的ARGB像素数组, 按行存放
+     * @throws java.lang.IllegalArgumentException 皮肤大小不正确. 
+     */
+    public static void renderSkinPreview2D(BufferedImage skin, SkinModelType modelType, int[] dest) throws IllegalArgumentException{
+        SkinRenderer.render(skin, modelType, dest);
     }
     
     public static boolean checkSkinSize(Image image) {
         return image.getWidth(null) == 64 && (image.getHeight(null) == 64 || image.getHeight(null) == 32);
     }
+    
+    /**
+     * 检查PNG文件头是否为有效的皮肤.
+     * 
+     * @param header {@link SkinPngHeader#read(byte[])} 等方法的结果
+     * @return 参数本身
+     * @throws java.lang.IllegalArgumentException 不是PNG文件或皮肤大小不正确
+     */
+    public static SkinPngHeader checkSkinHeader(SkinPngHeader header) throws IllegalArgumentException{
+        if(header == null)
+            throw new IllegalArgumentException("Not a PNG file");
+        if(!header.isValidSkinSize())
+            throw new IllegalArgumentException("Invalid image size: " + header.getWidth() + "*" + header.getHeight());
+        return header;
+    }
 }
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api.skin;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 为大量账户批量上传皮肤.
+ * <p>
+ * 任务在 {@link net.andylizi.mojang.utils.Common#getExecutor()} 上执行,
+ * 同时进行中的任务数不超过并行度. 单个任务失败不会影响其他任务.
+ * 内容相同的皮肤数据在一次批量上传中只保留一份.
+ *
+ * @author andylizi
+ */
+public class SkinBatchUploader {
+    private final int parallelism;
+
+    /**
+     * @param parallelism 并行度, 即同时进行的上传数
+     */
+    public SkinBatchUploader(int parallelism) {
+        if(parallelism <= 0)
+            throw new IllegalArgumentException("parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * 批量上传.
+     *
+     * @param jobs 任务
+     * @return 报告
+     * @throws InterruptedException 等待时被中断
+     */
+    public Report upload(Iterable<Job> jobs) throws InterruptedException{
+        return upload(jobs.iterator());
+    }
+
+    /**
+     * 批量上传.
+     *
+     * @param jobs 任务
+     * @return 报告
+     * @throws InterruptedException 等待时被中断
+     */
+    public Report upload(Stream<Job> jobs) throws InterruptedException{
+        return upload(jobs.iterator());
+    }
+
+    /**
+     * 批量上传. 任务按需从迭代器中取出, 阻塞直到所有任务完成.
+     *
+     * @param jobs 任务
+     * @return 报告
+     * @throws InterruptedException 等待时被中断, 已开始的任务会继续执行
+     */
+    public Report upload(Iterator<Job> jobs) throws InterruptedException{
+        Objects.requireNonNull(jobs);
+        final Semaphore permits = new Semaphore(parallelism);
+        final List<Result> results = Collections.synchronizedList(new ArrayList<Result>());
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicLong bytes = new AtomicLong();
+        final Map<ByteBuffer, byte[]> skins = new HashMap<>();
+        long start = System.nanoTime();
+
+        int index = 0;
+        while(jobs.hasNext()){
+            Job job = Objects.requireNonNull(jobs.next());
+            byte[] skin = skins.get(ByteBuffer.wrap(job.skin));
+            if(skin == null)
+                skins.put(ByteBuffer.wrap(job.skin), skin = job.skin);
+            final Job shared = skin == job.skin ? job : new Job(job.uid, job.accessToken, skin, job.type);
+            final int jobIndex = index++;
+
+            permits.acquire();
+            final long jobStart = System.nanoTime();
+            CompletableFuture<Boolean> future;
+            try {
+                future = new SkinAPI(shared.uid, shared.accessToken).uploadSkinAsync(shared.skin, shared.type);
+            } catch (RuntimeException ex) {
+                // 例如执行器拒绝了任务, 此时回调不会执行
+                results.add(new Result(jobIndex, shared, false, ex, System.nanoTime() - jobStart));
+                permits.release();
+                continue;
+            }
+            future.whenComplete((success, ex) -> {
+                try {
+                    boolean ok = ex == null && Boolean.TRUE.equals(success);
+                    if(ok){
+                        succeeded.incrementAndGet();
+                        bytes.addAndGet(shared.skin.length);
+                    }
+                    results.add(new Result(jobIndex, shared, ok, ex, System.nanoTime() - jobStart));
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+        permits.acquire(parallelism);
+        permits.release(parallelism);
+
+        List<Result> sorted = new ArrayList<>(results);
+        Collections.sort(sorted, (a, b) -> Integer.compare(a.index, b.index));
+        return new Report(sorted, succeeded.get(), skins.size(), bytes.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * 一个上传任务.
+     */
+    public static class Job {
+        public final String uid;
+        public final SkinModelType type;
+        private final String accessToken;
+        private final byte[] skin;
+
+        /**
+         * @param uid Mojang账户UUID(不带'-')
+         * @param accessToken 有效的AccessToken
+         * @param skin PNG皮肤文件数据, 不会被复制, 提交后不应再修改
+         * @param type 皮肤类型
+         */
+        public Job(String uid, String accessToken, byte[] skin, SkinModelType type) {
+            this.uid = Objects.requireNonNull(uid);
+            this.accessToken = Objects.requireNonNull(accessToken);
+            this.skin = Objects.requireNonNull(skin);
+            this.type = Objects.requireNonNull(type);
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder().append('{')
+                    .append("uid:").append(uid)
+                    .append(",type:").append(type.name())
+                    .append(",size:").append(skin.length)
+                    .append('}').toString();
+        }
+    }
+
+    /**
+     * 一个任务的结果.
+     */
+    public static class Result {
+        private final int index;
+        private final Job job;
+        private final boolean success;
+        private final Throwable failure;
+        private final long latency;
+
+        Result(int index, Job job, boolean success, Throwable failure, long latency) {
+            this.index = index;
+            this.job = job;
+            this.success = success;
+            this.failure = failure;
+            this.latency = latency;
+        }
+
+        public Job getJob() {
+            return job;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        /**
+         * @return 失败原因, 成功或服务器未返回错误时为null
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        /**
+         * @param unit 时间单位
+         * @return 从开始上传到完成的时间
+         */
+        public long getLatency(TimeUnit unit) {
+            return unit.convert(latency, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder().append('{')
+                    .append("job:").append(job)
+                    .append(",success:").append(success)
+                    .append(",failure:").append(failure)
+                    .append(",latency:").append(getLatency(TimeUnit.MILLISECONDS)).append("ms")
+                    .append('}').toString();
+        }
+    }
+
+    /**
+     * 批量上传的报告.
+     */
+    public static class Report {
+        private final List<Result> results;
+        private final int succeeded;
+        private final int distinctSkins;
+        private final long bytes;
+        private final long elapsed;
+
+        Report(List<Result> results, int succeeded, int distinctSkins, long bytes, long elapsed) {
+            this.results = Collections.unmodifiableList(results);
+            this.succeeded = succeeded;
+            this.distinctSkins = distinctSkins;
+            this.bytes = bytes;
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * @return 按提交顺序排列的结果
+         */
+        public List<Result> getResults() {
+            return results;
+        }
+
+        public int getTotal() {
+            return results.size();
+        }
+
+        public int getSucceeded() {
+            return succeeded;
+        }
+
+        public int getFailed() {
+            return results.size() - succeeded;
+        }
+
+        /**
+         * @return 不同皮肤的数量
+         */
+        public int getDistinctSkins() {
+            return distinctSkins;
+        }
+
+        /**
+         * @return 成功上传的皮肤数据总字节数
+         */
+        public long getBytesUploaded() {
+            return bytes;
+        }
+
+        /**
+         * @param unit 时间单位
+         * @return 总耗时
+         */
+        public long getElapsed(TimeUnit unit) {
+            return unit.convert(elapsed, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return 每秒完成的任务数
+         */
+        public double getThroughput() {
+            return elapsed == 0 ? 0 : results.size() * 1e9 / elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder().append('{')
+                    .append("total:").append(getTotal())
+                    .append(",succeeded:").append(succeeded)
+                    .append(",failed:").append(getFailed())
+                    .append(",distinctSkins:").append(distinctSkins)
+                    .append(",elapsed:").append(getElapsed(TimeUnit.MILLISECONDS)).append("ms")
+                    .append(",throughput:").append(String.format("%.2f/s", getThroughput()))
+                    .append('}').toString();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api.skin;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * 将皮肤统一转换为新版 (64*64) 布局.
+ * <p>
+ * 旧版 (64*32) 皮肤的左臂与左腿由右臂与右腿水平翻转得到, 与游戏客户端的转换方式相同;
+ * 转换后所有没有对应模型部位的区域都被清为透明.
+ * 所有操作都直接在像素数组上进行, 适合批量处理, 参见 {@link SkinPreviewPipeline#normalize(java.util.Iterator, java.nio.file.Path)}.
+ *
+ * @author andylizi
+ */
+public final class SkinNormalizer {
+    /**
+     * 新版皮肤高度
+     */
+    public static final int SKIN_HEIGHT = 64;
+
+    /**
+     * 每项为 {srcX, srcY, width, height, dstX, dstY}, 源区域水平翻转后复制到目标位置.
+     */
+    private static final int[] LEGACY_MIRRORS = {
+        4, 16, 4, 4, 20, 48,                //left leg top
+        8, 16, 4, 4, 24, 48,                //left leg bottom
+        0, 20, 4, 12, 24, 52,               //left leg outer -> inner
+        4, 20, 4, 12, 20, 52,               //left leg front
+        8, 20, 4, 12, 16, 52,               //left leg inner -> outer
+        12, 20, 4, 12, 28, 52,              //left leg back
+        44, 16, 4, 4, 36, 48,               //left arm top
+        48, 16, 4, 4, 40, 48,               //left arm bottom
+        40, 20, 4, 12, 40, 52,              //left arm outer -> inner
+        44, 20, 4, 12, 36, 52,              //left arm front
+        48, 20, 4, 12, 32, 52,              //left arm inner -> outer
+        52, 20, 4, 12, 44, 52,              //left arm back
+    };
+
+    /**
+     * 新版布局中没有对应模型部位的区域, 每项为 {x, y, width, height}.
+     */
+    private static final int[] UNUSED = {
+        0, 0, 8, 8,
+        24, 0, 16, 8,
+        56, 0, 8, 8,
+        0, 16, 4, 4,
+        12, 16, 8, 4,
+        36, 16, 8, 4,
+        52, 16, 12, 4,
+        56, 20, 8, 12,
+        0, 32, 4, 4,
+        12, 32, 8, 4,
+        36, 32, 8, 4,
+        52, 32, 12, 4,
+        56, 36, 8, 12,
+        0, 48, 4, 4,
+        12, 48, 8, 4,
+        28, 48, 8, 4,
+        44, 48, 8, 4,
+        60, 48, 4, 4,
+    };
+
+    /**
+     * 将皮肤转换为新版布局.
+     *
+     * @param skin 皮肤
+     * @return 新的64*64皮肤 (TYPE_INT_ARGB)
+     * @throws IllegalArgumentException 皮肤大小不正确
+     */
+    public static BufferedImage normalize(BufferedImage skin) throws IllegalArgumentException{
+        if(!SkinAPI.checkSkinSize(skin))
+            throw new IllegalArgumentException("Invalid image size: " + skin.getWidth() + "*" + skin.getHeight());
+        BufferedImage result = new BufferedImage(SkinRenderer.SKIN_WIDTH, SKIN_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        int[] dest = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+        SkinRenderer.pixels(skin, dest);
+        normalize(dest, skin.getHeight(), dest);
+        return result;
+    }
+
+    /**
+     * 将皮肤转换为新版布局.
+     *
+     * @param skin 皮肤的ARGB像素数组, 按行存放, 每行64像素
+     * @param skinHeight 皮肤高度, 32或64
+     * @param dest 长度至少为 64*64 的像素数组, 可以与 <code>skin</code> 相同
+     * @throws IllegalArgumentException 皮肤大小不正确
+     */
+    public static void normalize(int[] skin, int skinHeight, int[] dest) throws IllegalArgumentException{
+        if((skinHeight != 32 && skinHeight != 64) || skin.length < SkinRenderer.SKIN_WIDTH * skinHeight)
+            throw new IllegalArgumentException("Invalid image size: " + SkinRenderer.SKIN_WIDTH + "*" + skinHeight);
+        if(dest.length < SkinRenderer.SKIN_WIDTH * SKIN_HEIGHT)
+            throw new IllegalArgumentException("Destination buffer too small: " + dest.length);
+
+        int legacySize = SkinRenderer.SKIN_WIDTH * 32;
+        if(skin != dest)
+            System.arraycopy(skin, 0, dest, 0, SkinRenderer.SKIN_WIDTH * skinHeight);
+        if(skinHeight == 32){
+            Arrays.fill(dest, legacySize, SkinRenderer.SKIN_WIDTH * SKIN_HEIGHT, 0);
+            for(int i = 0; i < LEGACY_MIRRORS.length; i += 6)
+                mirror(dest, LEGACY_MIRRORS[i], LEGACY_MIRRORS[i + 1], LEGACY_MIRRORS[i + 2], LEGACY_MIRRORS[i + 3],
+                        LEGACY_MIRRORS[i + 4], LEGACY_MIRRORS[i + 5]);
+        }
+        for(int i = 0; i < UNUSED.length; i += 4)
+            clear(dest, UNUSED[i], UNUSED[i + 1], UNUSED[i + 2], UNUSED[i + 3]);
+    }
+
+    private static void mirror(int[] pixels, int srcX, int srcY, int width, int height, int dstX, int dstY) {
+        for(int y = 0; y < height; y++){
+            int s = (srcY + y) * SkinRenderer.SKIN_WIDTH + srcX + width - 1;
+            int d = (dstY + y) * SkinRenderer.SKIN_WIDTH + dstX;
+            for(int x = 0; x < width; x++)
+                pixels[d + x] = pixels[s - x];
+        }
+    }
+
+    private static void clear(int[] pixels, int x, int y, int width, int height) {
+        for(int row = y; row < y + height; row++){
+            int start = row * SkinRenderer.SKIN_WIDTH + x;
+            Arrays.fill(pixels, start, start + width, 0);
+        }
+    }
+
+    private SkinNormalizer() throws AssertionError{ throw new AssertionError(); }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api.skin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * PNG文件头 (签名与IHDR块) 的信息.
+ * <p>
+ * 只读取文件最前面的 {@value #HEADER_LENGTH} 个字节, 不解码图像,
+ * 因此可以在解码或上传之前以极低的代价拒绝格式或大小不正确的皮肤.
+ *
+ * @author andylizi
+ * @see SkinAPI#checkSkinSize(java.awt.Image)
+ */
+public final class SkinPngHeader {
+    /**
+     * 签名 (8字节) 与IHDR块 (长度4 + 类型4 + 数据13 + CRC4) 的总长度
+     */
+    public static final int HEADER_LENGTH = 33;
+
+    public static final int COLOR_GRAYSCALE = 0;
+    public static final int COLOR_RGB = 2;
+    public static final int COLOR_PALETTE = 3;
+    public static final int COLOR_GRAYSCALE_ALPHA = 4;
+    public static final int COLOR_RGBA = 6;
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int IHDR = 0x49484452;
+
+    private final int width;
+    private final int height;
+    private final int bitDepth;
+    private final int colorType;
+    private final boolean interlaced;
+
+    private SkinPngHeader(int width, int height, int bitDepth, int colorType, boolean interlaced) {
+        this.width = width;
+        this.height = height;
+        this.bitDepth = bitDepth;
+        this.colorType = colorType;
+        this.interlaced = interlaced;
+    }
+
+    /**
+     * 从字节数组中读取PNG文件头.
+     *
+     * @param data PNG文件数据
+     * @return 文件头, 不是有效的PNG文件时返回null
+     */
+    public static SkinPngHeader read(byte[] data) {
+        return read(data, 0, data.length);
+    }
+
+    /**
+     * 从字节数组中读取PNG文件头.
+     *
+     * @param data PNG文件数据
+     * @param offset 起始位置
+     * @param length 数据长度
+     * @return 文件头, 不是有效的PNG文件时返回null
+     */
+    public static SkinPngHeader read(byte[] data, int offset, int length) {
+        if(length < HEADER_LENGTH)
+            return null;
+        return parse(ByteBuffer.wrap(data, offset, HEADER_LENGTH));
+    }
+
+    /**
+     * 从输入流中读取PNG文件头. 将从流中读取 {@value #HEADER_LENGTH} 个字节.
+     *
+     * @param in PNG文件的输入流
+     * @return 文件头, 不是有效的PNG文件时返回null
+     * @throws IOException 发生 I/O 错误
+     */
+    public static SkinPngHeader read(InputStream in) throws IOException{
+        byte[] buf = new byte[HEADER_LENGTH];
+        int count = 0;
+        while(count < HEADER_LENGTH){
+            int len = in.read(buf, count, HEADER_LENGTH - count);
+            if(len == -1)
+                return null;
+            count += len;
+        }
+        return parse(ByteBuffer.wrap(buf));
+    }
+
+    /**
+     * 从文件通道的开头读取PNG文件头. 不改变通道的位置.
+     *
+     * @param channel PNG文件的通道
+     * @return 文件头, 不是有效的PNG文件时返回null
+     * @throws IOException 发生 I/O 错误
+     */
+    public static SkinPngHeader read(FileChannel channel) throws IOException{
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_LENGTH);
+        while(buf.hasRemaining()){
+            if(channel.read(buf, buf.position()) == -1)
+                return null;
+        }
+        buf.flip();
+        return parse(buf);
+    }
+
+    /**
+     * 读取PNG文件的文件头.
+     *
+     * @param file PNG文件
+     * @return 文件头, 不是有效的PNG文件时返回null
+     * @throws IOException 发生 I/O 错误
+     */
+    public static SkinPngHeader read(File file) throws IOException{
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return read(channel);
+        }
+    }
+
+    private static SkinPngHeader parse(ByteBuffer buf) {
+        int start = buf.position();
+        for(byte b : SIGNATURE){
+            if(buf.get() != b)
+                return null;
+        }
+        if(buf.getInt() != 13 || buf.getInt() != IHDR)
+            return null;
+        int width = buf.getInt();
+        int height = buf.getInt();
+        int bitDepth = buf.get() & 0xff;
+        int colorType = buf.get() & 0xff;
+        int compression = buf.get();
+        int filter = buf.get();
+        int interlace = buf.get();
+        int crc = buf.getInt();
+
+        CRC32 expected = new CRC32();
+        expected.update(buf.array(), buf.arrayOffset() + start + 12, 17);
+        if((int) expected.getValue() != crc)
+            return null;
+        if(width <= 0 || height <= 0 || compression != 0 || filter != 0 || (interlace & ~1) != 0)
+            return null;
+        if(!isValidBitDepth(colorType, bitDepth))
+            return null;
+        return new SkinPngHeader(width, height, bitDepth, colorType, interlace == 1);
+    }
+
+    private static boolean isValidBitDepth(int colorType, int bitDepth) {
+        switch(colorType){
+            case COLOR_GRAYSCALE:
+                return bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8 || bitDepth == 16;
+            case COLOR_PALETTE:
+                return bitDepth == 1 || bitDepth == 2 || bitDepth == 4 || bitDepth == 8;
+            case COLOR_RGB:
+            case COLOR_GRAYSCALE_ALPHA:
+            case COLOR_RGBA:
+                return bitDepth == 8 || bitDepth == 16;
+            default:
+                return false;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getBitDepth() {
+        return bitDepth;
+    }
+
+    /**
+     * @return PNG颜色类型, 为 <code>COLOR_*</code> 常量之一
+     */
+    public int getColorType() {
+        return colorType;
+    }
+
+    public boolean isInterlaced() {
+        return interlaced;
+    }
+
+    /**
+     * @return 大小是否为有效的皮肤 (64*64或64*32)
+     */
+    public boolean isValidSkinSize() {
+        return width == 64 && (height == 64 || height == 32);
+    }
+
+    /**
+     * @return 是否为旧版 (64*32) 皮肤
+     */
+    public boolean isLegacy() {
+        return width == 64 && height == 32;
+    }
+
+    /**
+     * @return 是否为新版 (64*64) 皮肤
+     */
+    public boolean isModern() {
+        return width == 64 && height == 64;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append("SkinPngHeader{")
+                .append("width:").append(width)
+                .append(",height:").append(height)
+                .append(",bitDepth:").append(bitDepth)
+                .append(",colorType:").append(colorType)
+                .append(",interlaced:").append(interlaced)
+                .append('}').toString();
+    }
+}
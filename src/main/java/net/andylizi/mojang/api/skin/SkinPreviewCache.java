@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api.skin;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * 按内容寻址的2D皮肤预览图缓存.
+ * <p>
+ * 以皮肤像素的SHA-256与模型类型作为键, 内容相同的皮肤只渲染一次.
+ * 缓存按占用字节数限制大小, 超出时淘汰最久未使用的项.
+ * 启用PNG缓存时, 编码后的PNG存放在堆外内存中, 可直接用于响应HTTP请求.
+ *
+ * @author andylizi
+ * @see SkinRenderer
+ */
+public class SkinPreviewCache {
+    private static final int PREVIEW_SIZE = SkinRenderer.PREVIEW_WIDTH * SkinRenderer.PREVIEW_HEIGHT;
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>(){
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private final long maxBytes;
+    private final boolean cachePng;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxBytes 缓存最多占用的字节数 (堆内与堆外合计)
+     * @param cachePng 是否在堆外缓存编码后的PNG
+     */
+    public SkinPreviewCache(long maxBytes, boolean cachePng) {
+        if(maxBytes <= 0)
+            throw new IllegalArgumentException("maxBytes must be positive");
+        this.maxBytes = maxBytes;
+        this.cachePng = cachePng;
+    }
+
+    /**
+     * 获得2D皮肤预览图, 未缓存时渲染并缓存.
+     *
+     * @param skin 皮肤
+     * @param modelType 皮肤类型
+     * @return 2D皮肤预览图 (16*32像素), 每次调用返回新的实例
+     * @throws IllegalArgumentException 皮肤大小不正确
+     */
+    public BufferedImage render(BufferedImage skin, SkinModelType modelType) throws IllegalArgumentException{
+        Entry entry = lookup(skin, modelType);
+        BufferedImage preview = new BufferedImage(SkinRenderer.PREVIEW_WIDTH, SkinRenderer.PREVIEW_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        int[] dest = ((DataBufferInt) preview.getRaster().getDataBuffer()).getData();
+        System.arraycopy(entry.pixels, 0, dest, 0, PREVIEW_SIZE);
+        return preview;
+    }
+
+    /**
+     * 获得PNG格式的2D皮肤预览图, 未缓存时渲染并编码.
+     *
+     * @param skin 皮肤
+     * @param modelType 皮肤类型
+     * @return 只读的PNG数据. 启用PNG缓存时位于堆外内存
+     * @throws IllegalArgumentException 皮肤大小不正确
+     * @throws IOException 编码失败
+     */
+    public ByteBuffer renderPng(BufferedImage skin, SkinModelType modelType) throws IllegalArgumentException, IOException{
+        Entry entry = lookup(skin, modelType);
+        ByteBuffer png = entry.png;
+        if(png != null)
+            return png.duplicate();
+
+        byte[] encoded = encode(entry.pixels);
+        if(!cachePng)
+            return ByteBuffer.wrap(encoded).asReadOnlyBuffer();
+        ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length);
+        direct.put(encoded).flip();
+        png = direct.asReadOnlyBuffer();
+        synchronized(this){
+            if(entry.png == null && entries.get(entry.key) == entry){
+                entry.png = png;
+                bytes += encoded.length;
+                trim();
+            }
+        }
+        return png.duplicate();
+    }
+
+    private Entry lookup(BufferedImage skin, SkinModelType modelType) {
+        Objects.requireNonNull(modelType);
+        if(!SkinAPI.checkSkinSize(skin))
+            throw new IllegalArgumentException("Invalid image size: " + skin.getWidth() + "*" + skin.getHeight());
+        Scratch scratch = SCRATCH.get();
+        int[] pixels = SkinRenderer.pixels(skin, scratch.pixels);
+        int length = SkinRenderer.SKIN_WIDTH * skin.getHeight();
+        Key key = new Key(scratch.digest(pixels, length), skin.getHeight(), modelType);
+
+        Entry entry;
+        synchronized(this){
+            entry = entries.get(key);
+        }
+        if(entry != null){
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+
+        int[] preview = new int[PREVIEW_SIZE];
+        SkinRenderer.render(pixels, skin.getHeight(), modelType, preview);
+        Entry created = new Entry(key, preview);
+        synchronized(this){
+            entry = entries.get(key);
+            if(entry != null)
+                return entry;
+            entries.put(key, created);
+            bytes += created.size();
+            trim();
+        }
+        return created;
+    }
+
+    private void trim() {
+        for(Iterator<Entry> it = entries.values().iterator(); bytes > maxBytes && it.hasNext();){
+            Entry eldest = it.next();
+            it.remove();
+            bytes -= eldest.size();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static byte[] encode(int[] pixels) throws IOException {
+        BufferedImage preview = new BufferedImage(SkinRenderer.PREVIEW_WIDTH, SkinRenderer.PREVIEW_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        System.arraycopy(pixels, 0, ((DataBufferInt) preview.getRaster().getDataBuffer()).getData(), 0, PREVIEW_SIZE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        try (ImageOutputStream image = new MemoryCacheImageOutputStream(out)) {
+            ImageIO.write(preview, "png", image);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 清空缓存.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return 缓存项数量
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return 当前占用的字节数 (估算)
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append("SkinPreviewCache{")
+                .append("size:").append(size())
+                .append(",bytes:").append(getBytes())
+                .append(",hits:").append(getHits())
+                .append(",misses:").append(getMisses())
+                .append(",evictions:").append(getEvictions())
+                .append('}').toString();
+    }
+
+    private static final class Key {
+        private final byte[] digest;
+        private final int height;
+        private final SkinModelType modelType;
+        private final int hash;
+
+        Key(byte[] digest, int height, SkinModelType modelType) {
+            this.digest = digest;
+            this.height = height;
+            this.modelType = modelType;
+            this.hash = (Arrays.hashCode(digest) * 31 + height) * 31 + modelType.ordinal();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(this == obj)
+                return true;
+            if(!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return height == other.height && modelType == other.modelType && Arrays.equals(digest, other.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        final Key key;
+        final int[] pixels;
+        volatile ByteBuffer png;
+
+        Entry(Key key, int[] pixels) {
+            this.key = key;
+            this.pixels = pixels;
+        }
+
+        long size() {
+            ByteBuffer png = this.png;
+            return ENTRY_OVERHEAD + pixels.length * 4L + (png == null ? 0 : png.capacity());
+        }
+    }
+
+    private static final class Scratch {
+        final int[] pixels = new int[SkinRenderer.SKIN_WIDTH * 64];
+        final byte[] bytes = new byte[SkinRenderer.SKIN_WIDTH * 64 * 4];
+        final MessageDigest digest;
+
+        Scratch() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new AssertionError("SHA-256 is required on every Java platform", ex);
+            }
+        }
+
+        byte[] digest(int[] pixels, int length) {
+            ByteBuffer.wrap(bytes).asIntBuffer().put(pixels, 0, length);
+            digest.update(bytes, 0, length * 4);
+            return digest.digest();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api.skin;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * 批量渲染2D皮肤预览图.
+ * <p>
+ * 每个皮肤的解码, 渲染与编码在 {@link ForkJoinPool} 上并行执行. 默认使用专用的线程池,
+ * 其中的文件 I/O 不会占用公共ForkJoinPool (并行流与 <code>CompletableFuture</code> 的默认线程池).
+ * 同时处理中的皮肤数量有上限, 因此输入再多也不会占用过多内存.
+ * 预览图以PNG格式写入输出目录, 文件名与输入相同. 编码时只使用内存缓存, 不会产生临时文件.
+ * 解码前先检查PNG文件头, 格式或大小不正确的文件不会被解码.
+ * 同样的流程也可用于将皮肤批量转换为新版布局, 参见 {@link #normalize(Iterator, Path)}.
+ *
+ * @author andylizi
+ * @see SkinRenderer
+ */
+public class SkinPreviewPipeline {
+    private final ForkJoinPool pool;
+    private final int maxInFlight;
+
+    /**
+     * 使用所有实例共享的专用线程池, 线程数与处理器数相同, 同时处理的皮肤数为其4倍.
+     */
+    public SkinPreviewPipeline() {
+        this(DefaultPool.POOL, DefaultPool.POOL.getParallelism() * 4);
+    }
+
+    /**
+     * @param pool 执行任务的线程池
+     * @param maxInFlight 最多同时处理的皮肤数
+     */
+    public SkinPreviewPipeline(ForkJoinPool pool, int maxInFlight) {
+        if(maxInFlight <= 0)
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        this.pool = Objects.requireNonNull(pool);
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * 渲染目录中的所有PNG皮肤.
+     *
+     * @param inputDir 输入目录
+     * @param outputDir 输出目录
+     * @param models 决定每个皮肤的模型类型
+     * @return 报告
+     * @throws IOException 无法读取输入目录或创建输出目录
+     * @throws InterruptedException 等待时被中断
+     */
+    public Report render(Path inputDir, Path outputDir, Function<Path, SkinModelType> models) throws IOException, InterruptedException{
+        try (DirectoryStream<Path> skins = Files.newDirectoryStream(inputDir, "*.png")) {
+            return render(skins.iterator(), outputDir, models);
+        }
+    }
+
+    /**
+     * 渲染所有皮肤.
+     *
+     * @param skins 皮肤文件
+     * @param outputDir 输出目录
+     * @param models 决定每个皮肤的模型类型
+     * @return 报告
+     * @throws IOException 无法创建输出目录
+     * @throws InterruptedException 等待时被中断
+     */
+    public Report render(Stream<Path> skins, Path outputDir, Function<Path, SkinModelType> models) throws IOException, InterruptedException{
+        return render(skins.iterator(), outputDir, models);
+    }
+
+    /**
+     * 渲染所有皮肤. 皮肤按需从迭代器中取出, 阻塞直到全部完成.
+     *
+     * @param skins 皮肤文件
+     * @param outputDir 输出目录
+     * @param models 决定每个皮肤的模型类型
+     * @return 报告
+     * @throws IOException 无法创建输出目录
+     * @throws InterruptedException 等待时被中断, 已开始的任务会继续执行
+     */
+    public Report render(Iterator<Path> skins, Path outputDir, Function<Path, SkinModelType> models) throws IOException, InterruptedException{
+        Objects.requireNonNull(models);
+        return run(skins, outputDir, (path, skin) -> SkinRenderer.render(skin, models.apply(path)));
+    }
+
+    /**
+     * 将目录中的所有PNG皮肤转换为新版 (64*64) 布局.
+     *
+     * @param inputDir 输入目录
+     * @param outputDir 输出目录, 不能与输入目录相同
+     * @return 报告, 其中的渲染时间为转换所用的时间
+     * @throws IOException 无法读取输入目录或创建输出目录
+     * @throws InterruptedException 等待时被中断
+     * @see SkinNormalizer
+     */
+    public Report normalize(Path inputDir, Path outputDir) throws IOException, InterruptedException{
+        try (DirectoryStream<Path> skins = Files.newDirectoryStream(inputDir, "*.png")) {
+            return normalize(skins.iterator(), outputDir);
+        }
+    }
+
+    /**
+     * 将所有皮肤转换为新版 (64*64) 布局. 皮肤按需从迭代器中取出, 阻塞直到全部完成.
+     *
+     * @param skins 皮肤文件
+     * @param outputDir 输出目录
+     * @return 报告, 其中的渲染时间为转换所用的时间
+     * @throws IOException 无法创建输出目录
+     * @throws InterruptedException 等待时被中断, 已开始的任务会继续执行
+     * @see SkinNormalizer
+     */
+    public Report normalize(Iterator<Path> skins, Path outputDir) throws IOException, InterruptedException{
+        return run(skins, outputDir, (path, skin) -> SkinNormalizer.normalize(skin));
+    }
+
+    private Report run(Iterator<Path> skins, final Path outputDir, final BiFunction<Path, BufferedImage, BufferedImage> transform) throws IOException, InterruptedException{
+        Objects.requireNonNull(skins);
+        Files.createDirectories(outputDir);
+
+        final Semaphore permits = new Semaphore(maxInFlight);
+        final Report report = new Report();
+        long start = System.nanoTime();
+        while(skins.hasNext()){
+            final Path skin = skins.next();
+            permits.acquire();
+            try {
+                pool.execute(() -> {
+                    try {
+                        process(skin, outputDir.resolve(skin.getFileName()), transform, report);
+                    } catch (Throwable t) {
+                        report.fail(skin, t);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                report.fail(skin, ex);
+                permits.release();
+            }
+        }
+        permits.acquire(maxInFlight);
+        permits.release(maxInFlight);
+        report.elapsed = System.nanoTime() - start;
+        return report;
+    }
+
+    private static void process(Path input, Path output, BiFunction<Path, BufferedImage, BufferedImage> transform, Report report) throws IOException{
+        long time = System.nanoTime();
+        SkinAPI.checkSkinHeader(SkinPngHeader.read(input.toFile()));
+        BufferedImage skin = ImageIO.read(input.toFile());
+        if(skin == null)
+            throw new IOException("Not an image: " + input);
+        long decoded = System.nanoTime();
+
+        BufferedImage result = transform.apply(input, skin);
+        long rendered = System.nanoTime();
+
+        try (OutputStream out = Files.newOutputStream(output);
+                ImageOutputStream image = new MemoryCacheImageOutputStream(out)) {
+            ImageIO.write(result, "png", image);
+        }
+        long encoded = System.nanoTime();
+        // 只统计成功的皮肤, 与按成功数计算的平均时间一致
+        report.succeeded.increment();
+        report.decode.add(decoded - time);
+        report.render.add(rendered - decoded);
+        report.encode.add(encoded - rendered);
+    }
+
+    /**
+     * 默认的线程池, 第一次使用时创建. 线程为守护线程, 空闲时自动退出.
+     */
+    private static final class DefaultPool {
+        static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("SkinPreviewPipeline-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * 批量渲染的报告.
+     */
+    public static class Report {
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder decode = new LongAdder();
+        private final LongAdder render = new LongAdder();
+        private final LongAdder encode = new LongAdder();
+        private final List<Failure> failures = Collections.synchronizedList(new ArrayList<Failure>());
+        private volatile long elapsed;
+
+        Report() {}
+
+        void fail(Path skin, Throwable cause) {
+            failures.add(new Failure(skin, cause));
+        }
+
+        public long getSucceeded() {
+            return succeeded.sum();
+        }
+
+        public int getFailed() {
+            return failures.size();
+        }
+
+        public List<Failure> getFailures() {
+            synchronized(failures){
+                return new ArrayList<>(failures);
+            }
+        }
+
+        /**
+         * @param unit 时间单位
+         * @return 所有成功的皮肤解码所用的总时间
+         */
+        public long getDecodeTime(TimeUnit unit) {
+            return unit.convert(decode.sum(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @param unit 时间单位
+         * @return 所有成功的皮肤渲染所用的总时间
+         */
+        public long getRenderTime(TimeUnit unit) {
+            return unit.convert(render.sum(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @param unit 时间单位
+         * @return 所有成功的皮肤编码并写入所用的总时间
+         */
+        public long getEncodeTime(TimeUnit unit) {
+            return unit.convert(encode.sum(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @param unit 时间单位
+         * @return 总耗时
+         */
+        public long getElapsed(TimeUnit unit) {
+            return unit.convert(elapsed, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return 每秒完成的皮肤数
+         */
+        public double getThroughput() {
+            return elapsed == 0 ? 0 : (getSucceeded() + getFailed()) * 1e9 / elapsed;
+        }
+
+        @Override
+        public String toString() {
+            long count = Math.max(1, getSucceeded());
+            return new StringBuilder().append('{')
+                    .append("succeeded:").append(getSucceeded())
+                    .append(",failed:").append(getFailed())
+                    .append(",elapsed:").append(getElapsed(TimeUnit.MILLISECONDS)).append("ms")
+                    .append(",throughput:").append(String.format("%.2f/s", getThroughput()))
+                    .append(",decode:").append(getDecodeTime(TimeUnit.MICROSECONDS) / count).append("us/skin")
+                    .append(",render:").append(getRenderTime(TimeUnit.MICROSECONDS) / count).append("us/skin")
+                    .append(",encode:").append(getEncodeTime(TimeUnit.MICROSECONDS) / count).append("us/skin")
+                    .append('}').toString();
+        }
+    }
+
+    /**
+     * 一个渲染失败的皮肤.
+     */
+    public static class Failure {
+        public final Path skin;
+        public final Throwable cause;
+
+        Failure(Path skin, Throwable cause) {
+            this.skin = skin;
+            this.cause = cause;
+        }
+
+        @Override
+        public String toString() {
+            return skin + ": " + cause;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api.skin;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 直接操作像素数组的2D皮肤预览渲染器.
+ * <p>
+ * 每种模型与皮肤高度对应一张预先计算的贴图表, 渲染时按表依次将皮肤中的矩形区域以SrcOver方式
+ * 混合到预览图中. 混合使用与Java2D软件管线相同的8位乘除表,
+ * 因此结果与通过 {@link java.awt.Graphics2D} 绘制的结果一致.
+ *
+ * @author andylizi
+ * @see SkinAPI#renderSkinPreview2D(BufferedImage, SkinModelType)
+ */
+public final class SkinRenderer {
+    /**
+     * 预览图宽度
+     */
+    public static final int PREVIEW_WIDTH = 16;
+
+    /**
+     * 预览图高度
+     */
+    public static final int PREVIEW_HEIGHT = 32;
+
+    /**
+     * 皮肤宽度
+     */
+    public static final int SKIN_WIDTH = 64;
+
+    /**
+     * 每项为 {srcX, srcY, width, height, dstX, dstY}, 按绘制顺序排列.
+     */
+    private static final int[] CLASSIC_LEGACY = blits(false, false);
+    private static final int[] CLASSIC_MODERN = blits(false, true);
+    private static final int[] SLIM_LEGACY = blits(true, false);
+    private static final int[] SLIM_MODERN = blits(true, true);
+
+    /**
+     * 每个线程复用的皮肤像素缓冲区
+     */
+    private static final ThreadLocal<int[]> SKIN_BUFFER = new ThreadLocal<int[]>(){
+        @Override
+        protected int[] initialValue() {
+            return new int[SKIN_WIDTH * 64];
+        }
+    };
+
+    private static final byte[] MUL8 = new byte[256 * 256];
+    private static final byte[] DIV8 = new byte[256 * 256];
+
+    static {
+        for(int i = 1; i < 256; i++){
+            int inc = (i << 16) + (i << 8) + i;
+            int val = inc + (1 << 23);
+            for(int j = 1; j < 256; j++){
+                MUL8[(i << 8) | j] = (byte) (val >>> 24);
+                val += inc;
+            }
+        }
+        for(int i = 1; i < 256; i++){
+            int inc = (int) (((0xffL << 24) + i / 2) / i);
+            long val = 1 << 23;
+            for(int j = 0; j < i; j++){
+                DIV8[(i << 8) | j] = (byte) (val >>> 24);
+                val += inc;
+            }
+            for(int j = i; j < 256; j++)
+                DIV8[(i << 8) | j] = (byte) 0xff;
+        }
+    }
+
+    private static int[] blits(boolean slim, boolean modern) {
+        int arm = slim ? 3 : 4;
+        int rightArmX = slim ? 1 : 0;
+        int[] legacy = {
+            8, 8, 8, 8, 4, 0,                   //head
+            20, 20, 8, 12, 4, 8,                //body
+            44, 20, arm, 12, rightArmX, 8,      //right arm
+            44, 20, arm, 12, 12, 8,             //left arm
+            4, 20, 4, 12, 4, 20,                //left leg
+            4, 20, 4, 12, 8, 20,                //right leg
+            40, 8, 8, 8, 4, 0,                  //hat
+        };
+        if(!modern)
+            return legacy;
+        int[] blits = Arrays.copyOf(legacy, legacy.length + 7 * 6);
+        int[] extra = {
+            36, 52, arm, 12, 12, 8,             //left arm
+            20, 52, 4, 12, 8, 20,               //left leg
+            20, 36, 8, 12, 4, 8,                //body wear
+            52, 52, arm, 12, 12, 8,             //left arm wear
+            44, 36, arm, 12, rightArmX, 8,      //right arm wear
+            4, 52, 4, 12, 8, 20,                //left leg wear
+            4, 36, 4, 12, 4, 20,                //right leg wear
+        };
+        System.arraycopy(extra, 0, blits, legacy.length, extra.length);
+        return blits;
+    }
+
+    /**
+     * 渲染出2D的皮肤预览图.
+     *
+     * @param skin 皮肤
+     * @param modelType 皮肤类型
+     * @return 2D皮肤预览图 (16*32像素, TYPE_INT_ARGB)
+     * @throws IllegalArgumentException 皮肤大小不正确
+     */
+    public static BufferedImage render(BufferedImage skin, SkinModelType modelType) throws IllegalArgumentException{
+        BufferedImage preview = new BufferedImage(PREVIEW_WIDTH, PREVIEW_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        int[] dest = ((DataBufferInt) preview.getRaster().getDataBuffer()).getData();
+        render(skin, modelType, dest);
+        return preview;
+    }
+
+    /**
+     * 将2D皮肤预览图渲染到调用者提供的缓冲区中.
+     *
+     * @param skin 皮肤
+     * @param modelType 皮肤类型
+     * @param dest 长度至少为 16*32 的ARGB像素数组, 按行存放
+     * @throws IllegalArgumentException 皮肤大小不正确
+     */
+    public static void render(BufferedImage skin, SkinModelType modelType, int[] dest) throws IllegalArgumentException{
+        if(!SkinAPI.checkSkinSize(skin))
+            throw new IllegalArgumentException("Invalid image size: " + skin.getWidth() + "*" + skin.getHeight());
+        render(pixels(skin, SKIN_BUFFER.get()), skin.getHeight(), modelType, dest);
+    }
+
+    /**
+     * 将2D皮肤预览图渲染到调用者提供的缓冲区中.
+     *
+     * @param skin 皮肤的ARGB像素数组 (非预乘), 按行存放, 每行64像素
+     * @param skinHeight 皮肤高度, 32或64
+     * @param modelType 皮肤类型
+     * @param dest 长度至少为 16*32 的ARGB像素数组, 按行存放
+     * @throws IllegalArgumentException 皮肤大小不正确
+     */
+    public static void render(int[] skin, int skinHeight, SkinModelType modelType, int[] dest) throws IllegalArgumentException{
+        Objects.requireNonNull(modelType);
+        if((skinHeight != 32 && skinHeight != 64) || skin.length < SKIN_WIDTH * skinHeight)
+            throw new IllegalArgumentException("Invalid image size: " + SKIN_WIDTH + "*" + skinHeight);
+        if(dest.length < PREVIEW_WIDTH * PREVIEW_HEIGHT)
+            throw new IllegalArgumentException("Destination buffer too small: " + dest.length);
+
+        boolean slim = modelType == SkinModelType.SLIM;
+        int[] blits = skinHeight == 64 ? (slim ? SLIM_MODERN : CLASSIC_MODERN) : (slim ? SLIM_LEGACY : CLASSIC_LEGACY);
+        Arrays.fill(dest, 0, PREVIEW_WIDTH * PREVIEW_HEIGHT, 0);
+        for(int i = 0; i < blits.length; i += 6)
+            blit(skin, blits[i], blits[i + 1], blits[i + 2], blits[i + 3], dest, blits[i + 4], blits[i + 5]);
+    }
+
+    /**
+     * 获得皮肤的ARGB像素数组 (非预乘).
+     * <code>TYPE_INT_ARGB</code> 与 <code>TYPE_INT_ARGB_PRE</code> 的皮肤直接从栅格的 <code>int[]</code> 中按行复制,
+     * 后者复制时反预乘, 结果与 {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)} 相同;
+     * 其他类型的皮肤仍通过 <code>getRGB</code> 经 {@link java.awt.image.ColorModel} 逐像素转换.
+     *
+     * @param skin 皮肤
+     * @param buffer 可复用的缓冲区, 为null或长度不足时将新建
+     * @return 像素数组, 按行存放, 每行64像素
+     */
+    public static int[] pixels(BufferedImage skin, int[] buffer) {
+        int width = skin.getWidth();
+        int height = skin.getHeight();
+        int size = width * height;
+        if(buffer == null || buffer.length < size)
+            buffer = new int[size];
+        int type = skin.getType();
+        if(type != BufferedImage.TYPE_INT_ARGB && type != BufferedImage.TYPE_INT_ARGB_PRE)
+            return skin.getRGB(0, 0, width, height, buffer, 0, width);
+
+        WritableRaster raster = skin.getRaster();
+        DataBufferInt data = (DataBufferInt) raster.getDataBuffer();
+        SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        int[] src = data.getData();
+        int stride = model.getScanlineStride();
+        int offset = data.getOffset() + model.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+        for(int y = 0; y < height; y++)
+            System.arraycopy(src, offset + y * stride, buffer, y * width, width);
+        if(type == BufferedImage.TYPE_INT_ARGB_PRE){
+            for(int i = 0; i < size; i++)
+                buffer[i] = unpremultiply(buffer[i]);
+        }
+        return buffer;
+    }
+
+    /**
+     * 与 {@link java.awt.image.DirectColorModel#getRGB(int)} 对预乘的sRGB像素的计算相同.
+     */
+    private static int unpremultiply(int pixel) {
+        int a = pixel >>> 24;
+        if(a == 0xff)
+            return pixel;
+        if(a == 0)
+            return 0;
+        int r = (int) ((((pixel >> 16) & 0xff) * 255.0f) / a + 0.5f);
+        int g = (int) ((((pixel >> 8) & 0xff) * 255.0f) / a + 0.5f);
+        int b = (int) (((pixel & 0xff) * 255.0f) / a + 0.5f);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static void blit(int[] src, int srcX, int srcY, int width, int height, int[] dst, int dstX, int dstY) {
+        for(int y = 0; y < height; y++){
+            int s = (srcY + y) * SKIN_WIDTH + srcX;
+            int d = (dstY + y) * PREVIEW_WIDTH + dstX;
+            for(int x = 0; x < width; x++, s++, d++){
+                int pixel = src[s];
+                int srcA = pixel >>> 24;
+                if(srcA == 0xff)
+                    dst[d] = pixel;
+                else if(srcA != 0)
+                    dst[d] = srcOver(pixel, srcA, dst[d]);
+            }
+        }
+    }
+
+    private static int srcOver(int src, int srcA, int dst) {
+        int srcRow = srcA << 8;
+        int resA = srcA;
+        int resR = MUL8[srcRow | ((src >> 16) & 0xff)] & 0xff;
+        int resG = MUL8[srcRow | ((src >> 8) & 0xff)] & 0xff;
+        int resB = MUL8[srcRow | (src & 0xff)] & 0xff;
+
+        int dstF = MUL8[((0xff - srcA) << 8) | (dst >>> 24)] & 0xff;
+        if(dstF != 0){
+            resA += dstF;
+            int dstRow = dstF << 8;
+            resR += MUL8[dstRow | ((dst >> 16) & 0xff)] & 0xff;
+            resG += MUL8[dstRow | ((dst >> 8) & 0xff)] & 0xff;
+            resB += MUL8[dstRow | (dst & 0xff)] & 0xff;
+        }
+        if(resA < 0xff){
+            int resRow = resA << 8;
+            resR = DIV8[resRow | resR] & 0xff;
+            resG = DIV8[resRow | resG] & 0xff;
+            resB = DIV8[resRow | resB] & 0xff;
+        }
+        return (resA << 24) | (resR << 16) | (resG << 8) | resB;
+    }
+
+    private SkinRenderer() throws AssertionError{ throw new AssertionError(); }
+}
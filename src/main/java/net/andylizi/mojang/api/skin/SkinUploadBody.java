@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api.skin;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import net.andylizi.mojang.transport.RequestBody;
+
+/**
+ * 上传皮肤所用的<code>multipart/form-data</code>请求体.
+ * <p>
+ * 皮肤前后的分段头在构造时一次性编码为字节, 因此总长度已知, 可以定长流式发送.
+ * 皮肤来自文件时, 每次发送都直接从 {@link FileChannel} 传输, 不会将整个文件读入堆中.
+ *
+ * @author andylizi
+ */
+public class SkinUploadBody extends RequestBody{
+    private static final byte[] DASHES = {'-', '-'};
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] MODEL_HEADER = ("Content-Disposition: form-data; name=\"model\"\r\n"
+            + "\r\n").getBytes(US_ASCII);
+    private static final byte[] FILE_HEADER = ("Content-Disposition: form-data; name=\"file\"; filename=\"dummy.png\"\r\n"
+            + "Content-Type: image/png\r\n"
+            + "\r\n").getBytes(US_ASCII);
+
+    private final String contentType;
+    private final byte[] preamble;
+    private final byte[] epilogue;
+    private final byte[] data;
+    private final File file;
+    private final long length;
+
+    /**
+     * @param boundary boundary
+     * @param type 皮肤类型
+     * @param data PNG皮肤文件数据, 不会被复制
+     */
+    public SkinUploadBody(String boundary, SkinModelType type, byte[] data) {
+        this(boundary, type, Objects.requireNonNull(data), null, data.length);
+    }
+
+    /**
+     * @param boundary boundary
+     * @param type 皮肤类型
+     * @param file PNG皮肤文件
+     * @throws FileNotFoundException 文件不存在
+     */
+    public SkinUploadBody(String boundary, SkinModelType type, File file) throws FileNotFoundException {
+        this(boundary, type, null, Objects.requireNonNull(file), file.length());
+        if(!file.isFile())
+            throw new FileNotFoundException(file.getPath());
+    }
+
+    private SkinUploadBody(String boundary, SkinModelType type, byte[] data, File file, long length) {
+        byte[] boundaryBytes = boundary.getBytes(US_ASCII);
+        byte[] model = type.toString().getBytes(US_ASCII);
+        this.contentType = "multipart/form-data; boundary=".concat(boundary);
+        this.preamble = concat(DASHES, boundaryBytes, CRLF, MODEL_HEADER, model, CRLF,
+                DASHES, boundaryBytes, CRLF, FILE_HEADER);
+        this.epilogue = concat(CRLF, DASHES, boundaryBytes, DASHES);
+        this.data = data;
+        this.file = file;
+        this.length = length;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public long getContentLength() {
+        return preamble.length + length + epilogue.length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(preamble);
+        if(data != null){
+            out.write(data);
+        }else{
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(out);
+                long position = 0;
+                while(position < length){
+                    long transferred = channel.transferTo(position, length - position, target);
+                    if(transferred <= 0)
+                        throw new IOException("File truncated during upload: " + file);
+                    position += transferred;
+                }
+            }
+        }
+        out.write(epilogue);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int size = 0;
+        for(byte[] part : parts)
+            size += part.length;
+        byte[] result = new byte[size];
+        int offset = 0;
+        for(byte[] part : parts){
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+}
@@ -64,6 +64,13 @@ import java.io.IOException;
 public class MojangException extends Exception{
     public static final Adapter ADAPTER = new Adapter();
     
+    private static volatile boolean stackTraceEnabled = true;
+    
+    /**
+     * 当前线程是否暂时关闭了堆栈记录, null表示未关闭
+     */
+    private static final ThreadLocal<Boolean> THREAD_STACK_TRACE_DISABLED = new ThreadLocal<>();
+    
     private String error;
     private String message;
 
@@ -81,6 +88,43 @@ public class MojangException extends Exception{
         return message;
     }
     
+    /**
+     * 设置创建异常时是否记录堆栈. 
+     * 关闭后, 在错误频繁的批量任务中创建与抛出异常几乎没有开销, 但异常将不包含堆栈信息. 
+     * 对此后创建的所有MojangException及其子类生效. 
+     * 
+     * @param enabled 是否记录堆栈, 默认为true
+     */
+    public static void setStackTraceEnabled(boolean enabled) {
+        stackTraceEnabled = enabled;
+    }
+    
+    public static boolean isStackTraceEnabled() {
+        return stackTraceEnabled;
+    }
+    
+    /**
+     * 设置当前线程此后创建的异常是否记录堆栈, 不影响其他线程. 
+     * 全局关闭时 ({@link #setStackTraceEnabled(boolean)}) 此设置无效. 
+     * 
+     * @param enabled 是否记录堆栈
+     * @return 之前的设置, 用于恢复
+     * @see net.andylizi.mojang.api.MojangResult#of(net.andylizi.mojang.api.MojangResult.Call)
+     */
+    public static boolean setThreadStackTraceEnabled(boolean enabled) {
+        boolean previous = THREAD_STACK_TRACE_DISABLED.get() == null;
+        if(enabled)
+            THREAD_STACK_TRACE_DISABLED.remove();
+        else
+            THREAD_STACK_TRACE_DISABLED.set(Boolean.TRUE);
+        return previous;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return stackTraceEnabled && THREAD_STACK_TRACE_DISABLED.get() == null ? super.fillInStackTrace() : this;
+    }
+    
     public static class Adapter extends TypeAdapter<MojangException>{
         private Adapter(){};
         
@@ -106,6 +150,8 @@ public class MojangException extends Exception{
                     case "errorMessage":
                         message = reader.nextString();
                         break;
+                    default:
+                        reader.skipValue();
                 }
             }
             reader.endObject();
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.exception;
+
+/**
+ * 请求过于频繁 (HTTP 429).
+ *
+ * @author andylizi
+ */
+public class TooManyRequestsException extends MojangException{
+    private final long retryAfter;
+
+    /**
+     * @param retryAfter 服务器要求的等待时间 (毫秒), 未知时为 -1
+     */
+    public TooManyRequestsException(long retryAfter) {
+        super("TooManyRequestsException", "The client has sent too many requests within a certain amount of time");
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return 服务器要求的等待时间 (毫秒), 未知时为 -1
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.metrics;
+
+import static net.andylizi.mojang.utils.Common.*;
+
+/**
+ * Java Flight Recorder支持.
+ * <p>
+ * 安装后每个请求都会产生一个 <code>net.andylizi.mojang.Request</code> 事件,
+ * 包含各阶段耗时, 端点, 状态码与传输的字节数, 可与GC及线程活动对照分析.
+ * 未开始记录时事件不会被提交, 开销可以忽略. 在没有 <code>jdk.jfr</code> 模块的JVM上什么也不做.
+ * 事件类以Java 11编译 (源码集 <code>src/jfr/java</code>), 因此需要Java 11或更高版本.
+ * <pre>
+ * JfrSupport.install();
+ * // java -XX:StartFlightRecording=filename=mojang.jfr ...
+ * </pre>
+ *
+ * @author andylizi
+ */
+public final class JfrSupport {
+    private static final boolean AVAILABLE = detect();
+
+    private static boolean detect() {
+        try {
+            Class.forName("jdk.jfr.Event", false, JfrSupport.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @return 当前JVM是否支持JFR事件
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * 创建记录JFR事件的监听器.
+     *
+     * @return 监听器, 不支持JFR时为 {@link RequestListener#NOOP}
+     */
+    public static RequestListener createListener() {
+        if(!AVAILABLE)
+            return RequestListener.NOOP;
+        try {
+            return (RequestListener) Class.forName("net.andylizi.mojang.metrics.JfrRequestListener")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return RequestListener.NOOP;
+        }
+    }
+
+    /**
+     * 在当前的请求监听器之外追加JFR事件的监听器.
+     *
+     * @return 是否已安装
+     * @see net.andylizi.mojang.utils.Common#setRequestListener(RequestListener)
+     */
+    public static boolean install() {
+        RequestListener listener = createListener();
+        if(listener == RequestListener.NOOP)
+            return false;
+        RequestListener current = Common.getRequestListener();
+        Common.setRequestListener(current == RequestListener.NOOP ? listener : RequestListener.of(current, listener));
+        return true;
+    }
+
+    private JfrSupport() throws AssertionError{ throw new AssertionError(); }
+}
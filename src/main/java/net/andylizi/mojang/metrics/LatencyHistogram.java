@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线程安全的对数-线性延迟直方图, 类似HdrHistogram.
+ * <p>
+ * 以纳秒为单位记录, 每个2的幂区间再线性划分为32个桶, 相对误差不超过约3%;
+ * 可记录的最大值约为73分钟, 更大的值按最大值计. 占用内存固定, 记录时无锁且不分配对象.
+ *
+ * @author andylizi
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_BIT = 41;
+    private static final long MAX_VALUE = (1L << (MAX_BIT + 1)) - 1;
+    private static final int BUCKETS = (MAX_BIT - SUB_BUCKET_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个值.
+     *
+     * @param nanos 纳秒, 负数按0计
+     */
+    public void record(long nanos) {
+        if(nanos < 0)
+            nanos = 0;
+        else if(nanos > MAX_VALUE)
+            nanos = MAX_VALUE;
+        counts.incrementAndGet(index(nanos));
+        count.increment();
+        sum.add(nanos);
+        long current;
+        while(nanos > (current = max.get()) && !max.compareAndSet(current, nanos));
+    }
+
+    private static int index(long value) {
+        if(value < 2 * SUB_BUCKETS)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * @return 桶所代表的值 (区间中点)
+     */
+    private static long valueOf(int index) {
+        if(index < 2 * SUB_BUCKETS)
+            return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lower + (1L << shift) / 2;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @param unit 时间单位
+     * @return 平均值
+     */
+    public double getMean(TimeUnit unit) {
+        long count = getCount();
+        return count == 0 ? 0 : (double) sum.sum() / count / unit.toNanos(1);
+    }
+
+    /**
+     * @param unit 时间单位
+     * @return 最大值 (精确)
+     */
+    public long getMax(TimeUnit unit) {
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param percentile 分位数, 0~100
+     * @param unit 时间单位
+     * @return 分位数对应的值, 没有记录时为0
+     */
+    public long getValueAtPercentile(double percentile, TimeUnit unit) {
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++)
+            total += counts.get(i);
+        if(total == 0)
+            return 0;
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += counts.get(i);
+            if(seen >= target)
+                return unit.convert(Math.min(valueOf(i), max.get()), TimeUnit.NANOSECONDS);
+        }
+        return getMax(unit);
+    }
+
+    /**
+     * 清空所有记录.
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append('{')
+                .append("count:").append(getCount())
+                .append(",mean:").append(String.format("%.1fus", getMean(TimeUnit.MICROSECONDS)))
+                .append(",p50:").append(getValueAtPercentile(50, TimeUnit.MICROSECONDS)).append("us")
+                .append(",p99:").append(getValueAtPercentile(99, TimeUnit.MICROSECONDS)).append("us")
+                .append(",p999:").append(getValueAtPercentile(99.9, TimeUnit.MICROSECONDS)).append("us")
+                .append(",max:").append(getMax(TimeUnit.MICROSECONDS)).append("us")
+                .append('}').toString();
+    }
+}
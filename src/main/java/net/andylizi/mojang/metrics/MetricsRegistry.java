@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按端点汇总请求统计的注册表. 不依赖任何第三方库.
+ * <p>
+ * 设置为 {@link net.andylizi.mojang.utils.Common#setRequestListener(RequestListener)} 后开始统计,
+ * 可定期读取 {@link #getEndpoints()} 并转发给监控系统.
+ *
+ * @author andylizi
+ */
+public class MetricsRegistry implements RequestListener {
+    private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+
+    @Override
+    public void onRequestComplete(RequestTrace trace) {
+        EndpointMetrics metrics = endpoints.get(trace.getEndpoint());
+        if(metrics == null){
+            EndpointMetrics created = new EndpointMetrics(trace.getEndpoint());
+            metrics = endpoints.putIfAbsent(trace.getEndpoint(), created);
+            if(metrics == null)
+                metrics = created;
+        }
+        metrics.record(trace);
+    }
+
+    /**
+     * @param endpoint 端点名称
+     * @return 端点的统计, 尚无请求时为null
+     */
+    public EndpointMetrics getEndpoint(String endpoint) {
+        return endpoints.get(endpoint);
+    }
+
+    /**
+     * @return 所有端点的统计, 按名称排序
+     */
+    public Map<String, EndpointMetrics> getEndpoints() {
+        return Collections.unmodifiableMap(new TreeMap<>(endpoints));
+    }
+
+    /**
+     * 清空所有统计.
+     */
+    public void reset() {
+        endpoints.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for(EndpointMetrics metrics : getEndpoints().values())
+            builder.append(metrics).append('\n');
+        return builder.toString();
+    }
+
+    /**
+     * 一个端点的统计.
+     */
+    public static class EndpointMetrics {
+        private final String endpoint;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final ConcurrentMap<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final LongAdder bytesDecoded = new LongAdder();
+        private final LongAdder decompressTime = new LongAdder();
+
+        EndpointMetrics(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        void record(RequestTrace trace) {
+            requests.increment();
+            if(trace.getStatusCode() < 0)
+                failures.increment();
+            else
+                increment(statusCodes, trace.getStatusCode());
+            if(trace.getError() != null)
+                increment(errors, trace.getError());
+            latency.record(trace.getTotalTime(TimeUnit.NANOSECONDS));
+            if(trace.getStatusCode() >= 0)
+                timeToFirstByte.record(trace.getTime(RequestTrace.Phase.WAIT, TimeUnit.NANOSECONDS));
+            bytesSent.add(trace.getBytesSent());
+            bytesReceived.add(trace.getBytesReceived());
+            bytesDecoded.add(trace.getBytesDecoded());
+            decompressTime.add(trace.getDecompressTime(TimeUnit.NANOSECONDS));
+        }
+
+        private static <K> void increment(ConcurrentMap<K, LongAdder> map, K key) {
+            LongAdder adder = map.get(key);
+            if(adder == null){
+                LongAdder created = new LongAdder();
+                adder = map.putIfAbsent(key, created);
+                if(adder == null)
+                    adder = created;
+            }
+            adder.increment();
+        }
+
+        private static <K> Map<K, Long> snapshot(ConcurrentMap<K, LongAdder> map) {
+            Map<K, Long> result = new TreeMap<>();
+            for(Map.Entry<K, LongAdder> entry : map.entrySet())
+                result.put(entry.getKey(), entry.getValue().sum());
+            return result;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        /**
+         * @return 未收到响应 (传输失败) 的请求数
+         */
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        /**
+         * @return 各HTTP状态码的次数
+         */
+        public Map<Integer, Long> getStatusCodes() {
+            return snapshot(statusCodes);
+        }
+
+        /**
+         * @return 各错误类型 (Mojang错误或异常类名) 的次数
+         */
+        public Map<String, Long> getErrors() {
+            return snapshot(errors);
+        }
+
+        /**
+         * @return 总耗时的分布
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return 首字节时间的分布
+         */
+        public LatencyHistogram getTimeToFirstByte() {
+            return timeToFirstByte;
+        }
+
+        public long getBytesSent() {
+            return bytesSent.sum();
+        }
+
+        /**
+         * @return 接收的响应体字节数 (压缩后)
+         */
+        public long getBytesReceived() {
+            return bytesReceived.sum();
+        }
+
+        /**
+         * @return 解压后的响应体字节数
+         */
+        public long getBytesDecoded() {
+            return bytesDecoded.sum();
+        }
+
+        /**
+         * @return 压缩率, 即接收字节数与解压后字节数之比; 没有数据时为1
+         */
+        public double getCompressionRatio() {
+            long decoded = getBytesDecoded();
+            return decoded == 0 ? 1 : (double) getBytesReceived() / decoded;
+        }
+
+        /**
+         * @param unit 时间单位
+         * @return 解压响应体所用的总时间
+         */
+        public long getDecompressTime(TimeUnit unit) {
+            return unit.convert(decompressTime.sum(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder().append(endpoint).append('{')
+                    .append("requests:").append(getRequests())
+                    .append(",failures:").append(getFailures())
+                    .append(",status:").append(getStatusCodes())
+                    .append(",errors:").append(getErrors())
+                    .append(",latency:").append(latency)
+                    .append(",ttfb:").append(timeToFirstByte)
+                    .append(",sent:").append(getBytesSent())
+                    .append(",received:").append(getBytesReceived())
+                    .append(",decoded:").append(getBytesDecoded())
+                    .append(String.format(",ratio:%.2f", getCompressionRatio()))
+                    .append(",decompress:").append(getDecompressTime(TimeUnit.MICROSECONDS)).append("us")
+                    .append('}').toString();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.metrics;
+
+import java.util.Objects;
+
+/**
+ * 接收请求生命周期的通知, 用于将统计数据接入监控系统.
+ * <p>
+ * 回调在发起请求的线程上同步执行, 实现应尽快返回且不应抛出异常.
+ * 未设置监听器时 (即为 {@link #NOOP}) 不会创建 {@link RequestTrace}, 几乎没有额外开销.
+ *
+ * @author andylizi
+ * @see net.andylizi.mojang.utils.Common#setRequestListener(RequestListener)
+ * @see MetricsRegistry
+ */
+@FunctionalInterface
+public interface RequestListener {
+    /**
+     * 不做任何事的监听器
+     */
+    RequestListener NOOP = trace -> {};
+
+    /**
+     * 请求开始时调用. 此时只有端点与请求方法可用.
+     *
+     * @param trace 请求记录
+     */
+    default void onRequestStart(RequestTrace trace) {}
+
+    /**
+     * 请求完成 (响应关闭) 或失败时调用.
+     *
+     * @param trace 请求记录
+     */
+    void onRequestComplete(RequestTrace trace);
+
+    /**
+     * 将多个监听器组合为一个, 按顺序通知.
+     *
+     * @param listeners 监听器
+     * @return 组合后的监听器
+     */
+    static RequestListener of(final RequestListener... listeners) {
+        for(RequestListener listener : listeners)
+            Objects.requireNonNull(listener);
+        if(listeners.length == 1)
+            return listeners[0];
+        final RequestListener[] copy = listeners.clone();
+        return new RequestListener(){
+            @Override
+            public void onRequestStart(RequestTrace trace) {
+                for(RequestListener listener : copy)
+                    listener.onRequestStart(trace);
+            }
+
+            @Override
+            public void onRequestComplete(RequestTrace trace) {
+                for(RequestListener listener : copy)
+                    listener.onRequestComplete(trace);
+            }
+        };
+    }
+}
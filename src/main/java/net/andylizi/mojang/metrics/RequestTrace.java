@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.metrics;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个请求的记录: 各阶段耗时, 状态码, 错误类型与传输的字节数.
+ * <p>
+ * 由传输层在发起请求时创建, 同一时刻只会被一个线程修改;
+ * 传给 {@link RequestListener#onRequestComplete(RequestTrace)} 后不再改变.
+ *
+ * @author andylizi
+ */
+public final class RequestTrace {
+    /**
+     * 请求的阶段
+     */
+    public enum Phase {
+        /**
+         * 获得连接, 包括等待空闲连接与建立TCP连接. 复用连接时接近0.
+         * 基于 {@link java.net.HttpURLConnection} 的传输层无法单独测量TLS握手, 此时也包括握手
+         */
+        CONNECT,
+        /**
+         * TLS握手. 只有 {@link net.andylizi.mojang.transport.NioHttpTransport} 单独记录
+         */
+        HANDSHAKE,
+        /**
+         * 写出请求体
+         */
+        SEND,
+        /**
+         * 等待响应, 即首字节时间
+         */
+        WAIT,
+        /**
+         * 读取响应体, 包括解压
+         */
+        RECEIVE
+    }
+
+    private final String method;
+    private final String endpoint;
+    private final long startTime;
+    private final long[] phases = new long[Phase.values().length];
+    private long lastMark;
+    private long endTime;
+    private int statusCode = -1;
+    private String error;
+    private long bytesSent;
+    private long bytesReceived;
+    private long bytesDecoded;
+    private long decompressTime;
+    private Object attachment;
+
+    /**
+     * @param method 请求方法
+     * @param endpoint 端点名称
+     */
+    public RequestTrace(String method, String endpoint) {
+        this.method = Objects.requireNonNull(method);
+        this.endpoint = Objects.requireNonNull(endpoint);
+        this.startTime = this.lastMark = System.nanoTime();
+    }
+
+    /**
+     * 结束一个阶段. 其耗时为距上一个阶段结束 (或请求开始) 的时间.
+     *
+     * @param phase 阶段
+     */
+    public void endPhase(Phase phase) {
+        long now = System.nanoTime();
+        phases[phase.ordinal()] += now - lastMark;
+        lastMark = now;
+    }
+
+    /**
+     * 结束请求并通知监听器. 监听器抛出的异常将被忽略.
+     *
+     * @param listener 监听器
+     */
+    public void finish(RequestListener listener) {
+        if(endTime != 0)
+            return;
+        endTime = System.nanoTime();
+        try {
+            listener.onRequestComplete(this);
+        } catch (RuntimeException ex) {
+            // 监听器的错误不应影响请求
+        }
+    }
+
+    /**
+     * 包装原始 (未解压的) 响应体以统计接收的字节数.
+     *
+     * @param in 原始响应体
+     * @return 包装后的输入流
+     */
+    public InputStream countReceived(InputStream in) {
+        return new CountingInputStream(in, false);
+    }
+
+    /**
+     * 包装解压后的响应体以统计解压后的字节数.
+     *
+     * @param in 解压后的响应体
+     * @return 包装后的输入流
+     */
+    public InputStream countDecoded(InputStream in) {
+        return new CountingInputStream(in, true);
+    }
+
+    /**
+     * 包装请求体的输出流以统计发送的字节数.
+     *
+     * @param out 输出流
+     * @return 包装后的输出流
+     */
+    public OutputStream countSent(OutputStream out) {
+        return new FilterOutputStream(out){
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesSent++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                bytesSent += len;
+            }
+        };
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return HTTP状态码, 未收到响应时为 -1
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public void setStatusCode(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return 错误类型: Mojang服务器返回的<code>error</code>, 或传输失败时的异常类名; 没有错误时为null
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    /**
+     * @return 开始时间, 与 {@link System#nanoTime()} 可比
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @param phase 阶段
+     * @param unit 时间单位
+     * @return 阶段耗时
+     */
+    public long getTime(Phase phase, TimeUnit unit) {
+        return unit.convert(phases[phase.ordinal()], TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit 时间单位
+     * @return 总耗时, 请求未结束时为到目前为止的耗时
+     */
+    public long getTotalTime(TimeUnit unit) {
+        return unit.convert((endTime == 0 ? System.nanoTime() : endTime) - startTime, TimeUnit.NANOSECONDS);
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return 接收的响应体字节数 (压缩后)
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return 解压后的响应体字节数
+     */
+    public long getBytesDecoded() {
+        return bytesDecoded;
+    }
+
+    /**
+     * 增加接收的响应体字节数, 用于无法包装输入流的情况, 例如响应体已完整读入内存.
+     *
+     * @param n 字节数 (压缩后)
+     */
+    public void addBytesReceived(long n) {
+        if(n > 0)
+            bytesReceived += n;
+    }
+
+    /**
+     * 增加解压响应体所用的CPU时间. 解压与读取交替进行, 此时间包含在 {@link Phase#RECEIVE} 之内.
+     *
+     * @param nanos 纳秒
+     */
+    public void addDecompressTime(long nanos) {
+        if(nanos > 0)
+            decompressTime += nanos;
+    }
+
+    /**
+     * @param unit 时间单位
+     * @return 解压响应体所用的时间
+     */
+    public long getDecompressTime(TimeUnit unit) {
+        return unit.convert(decompressTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return 监听器附加的对象
+     */
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    /**
+     * 附加一个对象, 例如在 {@link RequestListener#onRequestStart(RequestTrace)} 中开始的事件.
+     *
+     * @param attachment 附加的对象
+     */
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder().append('{')
+                .append("endpoint:").append(endpoint)
+                .append(",method:").append(method)
+                .append(",status:").append(statusCode);
+        if(error != null)
+            builder.append(",error:").append(error);
+        for(Phase phase : Phase.values())
+            builder.append(',').append(phase.name().toLowerCase()).append(':').append(getTime(phase, TimeUnit.MICROSECONDS)).append("us");
+        return builder.append(",decompress:").append(getDecompressTime(TimeUnit.MICROSECONDS)).append("us")
+                .append(",total:").append(getTotalTime(TimeUnit.MICROSECONDS)).append("us")
+                .append(",sent:").append(bytesSent)
+                .append(",received:").append(bytesReceived)
+                .append(",decoded:").append(bytesDecoded)
+                .append('}').toString();
+    }
+
+    private final class CountingInputStream extends FilterInputStream {
+        private final boolean decoded;
+
+        CountingInputStream(InputStream in, boolean decoded) {
+            super(in);
+            this.decoded = decoded;
+        }
+
+        private void count(long n) {
+            if(n <= 0)
+                return;
+            if(decoded)
+                bytesDecoded += n;
+            else
+                bytesReceived += n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if(b != -1)
+                count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            count(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
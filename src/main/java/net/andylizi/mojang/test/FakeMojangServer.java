@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 进程内的Mojang API替身服务器, 用于负载测试.
+ * <p>
+ * 实现以下路由:
+ * <ul>
+ *  <li><code>PUT/DELETE /user/profile/{uuid}/skin</code></li>
+ *  <li><code>GET/POST /user/security/location</code></li>
+ *  <li><code>GET /user/security/challenges</code></li>
+ * </ul>
+ * 可配置响应延迟, gzip压缩, 以及按比例注入错误与 <code>429 Too Many Requests</code>.
+ * 配合 {@link net.andylizi.mojang.utils.Common#setApiBase(String)} 使用.
+ *
+ * @author andylizi
+ * @see LoadDriver
+ */
+public class FakeMojangServer implements Closeable {
+    static final String CHALLENGES = "["
+            + "{\"answer\":{\"id\":1001},\"question\":{\"id\":1,\"question\":\"What is your favorite pet's name?\"}},"
+            + "{\"answer\":{\"id\":1002},\"question\":{\"id\":2,\"question\":\"What is your favorite movie?\"}},"
+            + "{\"answer\":{\"id\":1003},\"question\":{\"id\":3,\"question\":\"What is your favorite author's last name?\"}}"
+            + "]";
+    private static final String NOT_SECURED = "{\"error\":\"ForbiddenOperationException\",\"errorMessage\":\"Current IP not secured\"}";
+    private static final String UNAUTHORIZED = "{\"error\":\"Unauthorized\",\"errorMessage\":\"The request requires user authentication\"}";
+    private static final String INTERNAL_ERROR = "{\"error\":\"InternalServerError\",\"errorMessage\":\"Injected failure\"}";
+    private static final String TOO_MANY_REQUESTS = "{\"error\":\"TooManyRequestsException\",\"errorMessage\":\"The client has sent too many requests within a certain amount of time\"}";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private volatile long latency;
+    private volatile boolean gzip = true;
+    private volatile boolean secured = true;
+    private volatile double errorRate;
+    private volatile double throttleRate;
+    private volatile int retryAfter = 1;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong injectedThrottles = new AtomicLong();
+
+    /**
+     * 在回环地址的随机端口上启动服务器.
+     *
+     * @throws IOException 无法绑定端口
+     */
+    public FakeMojangServer() throws IOException {
+        this(0);
+    }
+
+    /**
+     * 在回环地址上启动服务器.
+     *
+     * @param port 端口, 为0时随机选择
+     * @throws IOException 无法绑定端口
+     */
+    public FakeMojangServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "FakeMojangServer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/user/profile/", new Handler(){
+            @Override
+            void serve(HttpExchange exchange) throws IOException {
+                String method = exchange.getRequestMethod();
+                if(!exchange.getRequestURI().getPath().endsWith("/skin")){
+                    send(exchange, 404, null);
+                }else if(!"PUT".equals(method) && !"DELETE".equals(method)){
+                    send(exchange, 405, null);
+                }else if(!secured){
+                    send(exchange, 403, NOT_SECURED);
+                }else{
+                    send(exchange, 204, null);
+                }
+            }
+        });
+        server.createContext("/user/security/location", new Handler(){
+            @Override
+            void serve(HttpExchange exchange) throws IOException {
+                switch(exchange.getRequestMethod()){
+                    case "GET":
+                        send(exchange, secured ? 204 : 403, secured ? null : NOT_SECURED);
+                        break;
+                    case "POST":
+                        secured = true;
+                        send(exchange, 204, null);
+                        break;
+                    default:
+                        send(exchange, 405, null);
+                }
+            }
+        });
+        server.createContext("/user/security/challenges", new Handler(){
+            @Override
+            void serve(HttpExchange exchange) throws IOException {
+                if(!"GET".equals(exchange.getRequestMethod()))
+                    send(exchange, 405, null);
+                else
+                    send(exchange, 200, CHALLENGES);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @return 服务器地址, 可直接传给 {@link net.andylizi.mojang.utils.Common#setApiBase(String)}
+     */
+    public String getBaseURL() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    /**
+     * @param latency 每个请求的响应延迟
+     * @param unit 时间单位
+     */
+    public void setLatency(long latency, TimeUnit unit) {
+        this.latency = unit.toMillis(latency);
+    }
+
+    /**
+     * @param gzip 客户端接受gzip时是否压缩响应体, 默认为true
+     */
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * @param secured 当前IP是否已验证安全问题, 默认为true. 提交安全问题后自动变为true
+     */
+    public void setSecured(boolean secured) {
+        this.secured = secured;
+    }
+
+    /**
+     * @param errorRate 返回 <code>500 Internal Server Error</code> 的请求比例, 0~1
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param throttleRate 返回 <code>429 Too Many Requests</code> 的请求比例, 0~1
+     * @param retryAfter 429响应中的 <code>Retry-After</code> (秒)
+     */
+    public void setThrottleRate(double throttleRate, int retryAfter) {
+        this.throttleRate = throttleRate;
+        this.retryAfter = retryAfter;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public long getInjectedThrottles() {
+        return injectedThrottles.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private abstract class Handler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                requests.incrementAndGet();
+                drain(exchange.getRequestBody());
+                long latency = FakeMojangServer.this.latency;
+                if(latency > 0)
+                    Thread.sleep(latency);
+
+                String auth = exchange.getRequestHeaders().getFirst("Authorization");
+                double dice = ThreadLocalRandom.current().nextDouble();
+                if(auth == null || !auth.startsWith("Bearer ") || auth.length() == 7){
+                    send(exchange, 401, UNAUTHORIZED);
+                }else if(dice < throttleRate){
+                    injectedThrottles.incrementAndGet();
+                    exchange.getResponseHeaders().set("Retry-After", Integer.toString(retryAfter));
+                    send(exchange, 429, TOO_MANY_REQUESTS);
+                }else if(dice < throttleRate + errorRate){
+                    injectedErrors.incrementAndGet();
+                    send(exchange, 500, INTERNAL_ERROR);
+                }else{
+                    serve(exchange);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        }
+
+        abstract void serve(HttpExchange exchange) throws IOException;
+
+        void send(HttpExchange exchange, int status, String json) throws IOException {
+            if(json == null){
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            byte[] body = json.getBytes(UTF_8);
+            String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if(gzip && accept != null && accept.contains("gzip")){
+                ByteArrayOutputStream out = new ByteArrayOutputStream(body.length);
+                try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+                    gz.write(body);
+                }
+                body = out.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+
+        private void drain(InputStream in) throws IOException {
+            byte[] buf = new byte[4096];
+            while(in.read(buf) != -1);
+            in.close();
+        }
+    }
+}
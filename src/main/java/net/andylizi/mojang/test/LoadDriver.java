@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.andylizi.mojang.api.security.LocationStatusCache;
+import net.andylizi.mojang.api.security.SecurityAPI;
+import net.andylizi.mojang.api.skin.SkinAPI;
+import net.andylizi.mojang.metrics.JfrSupport;
+import net.andylizi.mojang.metrics.RequestListener;
+import net.andylizi.mojang.transport.CircuitBreakerTransport;
+import net.andylizi.mojang.transport.HttpTransport;
+import net.andylizi.mojang.transport.NioHttpTransport;
+import net.andylizi.mojang.transport.PooledHttpTransport;
+import static net.andylizi.mojang.utils.Common.*;
+
+/**
+ * 负载测试驱动. 以固定的并发数重复执行任务, 统计吞吐量与延迟分位数.
+ * <p>
+ * 直接运行时启动一个 {@link FakeMojangServer} 并对其施压, 参数为 <code>key=value</code> 形式:
+ * <pre>
+ * concurrency=32 requests=20000 scenario=reset|need|fetch latency=0 gzip=true errorRate=0 throttleRate=0 transport=pooled|nio breaker=false jfr=false coalescing=false
+ * </pre>
+ * <code>need</code> 与 <code>fetch</code> 默认不合并相同的并发请求, 否则大部分调用不会到达服务器;
+ * <code>coalescing=true</code> 时以服务器实际收到的请求数为准.
+ * <code>breaker=true</code> 时在传输层外加上 {@link CircuitBreakerTransport};
+ * <code>jfr=true</code> 时安装 {@link JfrSupport}, 配合 <code>-XX:StartFlightRecording</code> 记录每个请求.
+ *
+ * @author andylizi
+ */
+public class LoadDriver {
+    private final int concurrency;
+
+    /**
+     * @param concurrency 并发线程数
+     */
+    public LoadDriver(int concurrency) {
+        if(concurrency <= 0)
+            throw new IllegalArgumentException("concurrency must be positive");
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * 执行任务直到完成指定的次数. 任务抛出的异常计为错误, 其延迟同样被统计.
+     *
+     * @param requests 总次数
+     * @param task 任务
+     * @return 报告
+     * @throws InterruptedException 等待时被中断
+     */
+    public Report run(final long requests, final Callable<?> task) throws InterruptedException{
+        final AtomicLong remaining = new AtomicLong(requests);
+        final Report report = new Report();
+        final long[][] samples = new long[concurrency][];
+        final CountDownLatch done = new CountDownLatch(concurrency);
+        long start = System.nanoTime();
+        for(int i = 0; i < concurrency; i++){
+            final int worker = i;
+            Thread thread = new Thread(() -> {
+                long[] latencies = new long[(int) Math.min(Integer.MAX_VALUE - 8, requests / concurrency + 1)];
+                int count = 0;
+                try {
+                    while(remaining.getAndDecrement() > 0){
+                        long begin = System.nanoTime();
+                        try {
+                            task.call();
+                        } catch (Exception ex) {
+                            report.error(ex);
+                        }
+                        if(count == latencies.length)
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        latencies[count++] = System.nanoTime() - begin;
+                    }
+                } finally {
+                    samples[worker] = Arrays.copyOf(latencies, count);
+                    done.countDown();
+                }
+            }, "LoadDriver-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        report.elapsed = System.nanoTime() - start;
+
+        int total = 0;
+        for(long[] sample : samples)
+            total += sample.length;
+        long[] all = new long[total];
+        int offset = 0;
+        for(long[] sample : samples){
+            System.arraycopy(sample, 0, all, offset, sample.length);
+            offset += sample.length;
+        }
+        Arrays.sort(all);
+        report.latencies = all;
+        return report;
+    }
+
+    /**
+     * 负载测试的报告.
+     */
+    public static class Report {
+        private final LongAdder errors = new LongAdder();
+        private final ConcurrentMap<String, LongAdder> errorTypes = new ConcurrentHashMap<>();
+        private long elapsed;
+        private long[] latencies;
+
+        Report() {}
+
+        void error(Exception ex) {
+            errors.increment();
+            errorTypes.computeIfAbsent(ex.getClass().getSimpleName(), k -> new LongAdder()).increment();
+        }
+
+        public long getCount() {
+            return latencies.length;
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        /**
+         * @return 各异常类型的错误数
+         */
+        public Map<String, Long> getErrorTypes() {
+            Map<String, Long> result = new HashMap<>();
+            for(Map.Entry<String, LongAdder> entry : errorTypes.entrySet())
+                result.put(entry.getKey(), entry.getValue().sum());
+            return result;
+        }
+
+        public long getElapsed(TimeUnit unit) {
+            return unit.convert(elapsed, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return 每秒完成的请求数
+         */
+        public double getThroughput() {
+            return elapsed == 0 ? 0 : latencies.length * 1e9 / elapsed;
+        }
+
+        /**
+         * @param percentile 分位数, 0~100
+         * @param unit 时间单位
+         * @return 延迟
+         */
+        public long getLatency(double percentile, TimeUnit unit) {
+            if(latencies.length == 0)
+                return 0;
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return unit.convert(latencies[Math.max(0, Math.min(index, latencies.length - 1))], TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder().append('{')
+                    .append("requests:").append(getCount())
+                    .append(",errors:").append(getErrors()).append(getErrorTypes())
+                    .append(",elapsed:").append(getElapsed(TimeUnit.MILLISECONDS)).append("ms")
+                    .append(",throughput:").append(String.format("%.1f/s", getThroughput()))
+                    .append(",p50:").append(getLatency(50, TimeUnit.MICROSECONDS)).append("us")
+                    .append(",p99:").append(getLatency(99, TimeUnit.MICROSECONDS)).append("us")
+                    .append(",p999:").append(getLatency(99.9, TimeUnit.MICROSECONDS)).append("us")
+                    .append(",max:").append(getLatency(100, TimeUnit.MICROSECONDS)).append("us")
+                    .append('}').toString();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // 避免响应头与响应体分两次写出时, Nagle算法与延迟确认叠加产生约40ms的额外延迟.
+        // 必须在第一个HttpServer创建之前设置
+        if(System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        Map<String, String> options = new HashMap<>();
+        for(String arg : args){
+            int index = arg.indexOf('=');
+            if(index > 0)
+                options.put(arg.substring(0, index), arg.substring(index + 1));
+        }
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        long requests = Long.parseLong(options.getOrDefault("requests", "20000"));
+        String scenario = options.getOrDefault("scenario", "reset");
+        boolean nio = "nio".equals(options.getOrDefault("transport", "pooled"));
+
+        HttpTransport oldTransport = Common.getTransport();
+        String oldBase = Common.getApiBase();
+        RequestListener oldListener = Common.getRequestListener();
+        if(Boolean.parseBoolean(options.getOrDefault("jfr", "false")) && !JfrSupport.install())
+            System.err.println("JFR is not available");
+        try (FakeMojangServer server = new FakeMojangServer();
+                HttpTransport transport = nio ? new NioHttpTransport() : new PooledHttpTransport(concurrency)) {
+            server.setLatency(Long.parseLong(options.getOrDefault("latency", "0")), TimeUnit.MILLISECONDS);
+            server.setGzip(Boolean.parseBoolean(options.getOrDefault("gzip", "true")));
+            server.setErrorRate(Double.parseDouble(options.getOrDefault("errorRate", "0")));
+            server.setThrottleRate(Double.parseDouble(options.getOrDefault("throttleRate", "0")), 1);
+            Common.setApiBase(server.getBaseURL());
+            Common.setTransport(Boolean.parseBoolean(options.getOrDefault("breaker", "false")) ? new CircuitBreakerTransport(transport) : transport);
+
+            final SkinAPI skinAPI = new SkinAPI("160509efc59b4f3d88e27cf40b2b5c19", "token");
+            final SecurityAPI securityAPI = new SecurityAPI("token");
+            securityAPI.setLocationStatusCache(null);
+            securityAPI.setRequestCoalescing(Boolean.parseBoolean(options.getOrDefault("coalescing", "false")));
+            Callable<?> task;
+            switch(scenario){
+                case "reset":
+                    task = skinAPI::resetSkin;
+                    break;
+                case "need":
+                    task = securityAPI::needSecurityQuestions;
+                    break;
+                case "fetch":
+                    task = securityAPI::fetchSecurityQuestions;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown scenario: " + scenario);
+            }
+
+            LoadDriver driver = new LoadDriver(concurrency);
+            driver.run(Math.min(requests, 1000), task);
+            Report report = driver.run(requests, task);
+            System.out.println(scenario + " x" + concurrency + " " + report);
+            System.out.println("server requests: " + server.getRequests());
+        } finally {
+            Common.setTransport(oldTransport);
+            Common.setApiBase(oldBase);
+            Common.setRequestListener(oldListener);
+            LocationStatusCache.SHARED.clear();
+        }
+    }
+}
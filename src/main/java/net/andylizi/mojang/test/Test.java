@@ -21,6 +21,7 @@ import java.io.File;
 import java.util.Scanner;
 import javax.imageio.ImageIO;
 
+import net.andylizi.mojang.api.security.AnswerVault;
 import net.andylizi.mojang.api.security.SecurityAPI;
 import net.andylizi.mojang.api.security.SecurityQuestions;
 import net.andylizi.mojang.api.skin.SkinAPI;
@@ -43,15 +44,20 @@ public class Test {
             SecurityAPI securityAPI = new SecurityAPI(token);
             if(securityAPI.needSecurityQuestions()){
                 SecurityQuestions questions = securityAPI.fetchSecurityQuestions();
-                try (Scanner scanner = new Scanner(System.in)) {
-                    System.out.println(questions.getQuestions()[0].question);
-                    questions.answer(0, scanner.nextLine());
-                    System.out.println(questions.getQuestions()[1].question);
-                    questions.answer(1, scanner.nextLine());
-                    System.out.println(questions.getQuestions()[2].question);
-                    questions.answer(2, scanner.nextLine());
+                try (AnswerVault vault = new AnswerVault(new File("answers.vault"))) {
+                    if(!questions.fillAnswers(uid, vault)){
+                        try (Scanner scanner = new Scanner(System.in)) {
+                            for(int i = 0; i < 3; i++){
+                                if(questions.getQuestion(i).isComeplete())
+                                    continue;
+                                System.out.println(questions.getQuestion(i).question);
+                                questions.answer(i, scanner.nextLine());
+                            }
+                        }
+                    }
+                    if(securityAPI.submitSecurityQuestions(questions))
+                        vault.putAnswers(uid, questions);
                 }
-                securityAPI.submitSecurityQuestions(questions);
             }
             //skinAPI.resetSkin();
             skinAPI.uploadSkin(skinFile, type);
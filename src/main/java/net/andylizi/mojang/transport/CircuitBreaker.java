@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 断路器.
+ * <p>
+ * 关闭状态下记录最近 <code>windowSize</code> 次请求的结果, 失败率达到阈值时断开,
+ * 断开期间的请求立即失败而不会占用线程等待超时. 断开一段时间后进入半开状态,
+ * 放行少量探测请求: 全部成功则恢复关闭, 任一失败则再次断开.
+ * <p>
+ * 每次状态改变时代数加一, 许可中记录获得时的代数. 状态改变之前发出的请求, 其结果在之后才报告时被忽略,
+ * 不会使新的关闭状态重新断开, 也不会被当作半开状态的探测结果.
+ *
+ * @author andylizi
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * {@link #tryAcquire()} 拒绝请求时的返回值
+     */
+    public static final long REJECTED = -1;
+
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openDuration;
+    private final int halfOpenCalls;
+
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long generation;
+    private long openedAt;
+    private int probesIssued;
+    private int probesSucceeded;
+
+    /**
+     * 使用默认参数: 最近20次请求中至少10次且失败率达到50%时断开, 30秒后放行3个探测请求.
+     */
+    public CircuitBreaker() {
+        this(0.5, 20, 10, 30, TimeUnit.SECONDS, 3);
+    }
+
+    /**
+     * @param failureRateThreshold 断开的失败率阈值, (0, 1]
+     * @param windowSize 统计失败率的请求数
+     * @param minimumCalls 计算失败率所需的最少请求数, 不超过 <code>windowSize</code>
+     * @param openDuration 断开后到进入半开状态的时间
+     * @param unit 时间单位
+     * @param halfOpenCalls 半开状态下放行的探测请求数
+     */
+    public CircuitBreaker(double failureRateThreshold, int windowSize, int minimumCalls, long openDuration, TimeUnit unit, int halfOpenCalls) {
+        if(!(failureRateThreshold > 0 && failureRateThreshold <= 1))
+            throw new IllegalArgumentException("Require 0 < failureRateThreshold <= 1");
+        if(windowSize <= 0 || minimumCalls <= 0 || minimumCalls > windowSize)
+            throw new IllegalArgumentException("Require 0 < minimumCalls <= windowSize");
+        if(openDuration < 0)
+            throw new IllegalArgumentException("openDuration must not be negative");
+        if(halfOpenCalls <= 0)
+            throw new IllegalArgumentException("halfOpenCalls must be positive");
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.openDuration = unit.toNanos(openDuration);
+        this.halfOpenCalls = halfOpenCalls;
+        this.window = new boolean[windowSize];
+    }
+
+    /**
+     * 请求许可. 获得许可后必须以其调用 {@link #onSuccess(long)}, {@link #onFailure(long)} 或 {@link #onIgnored(long)} 之一.
+     *
+     * @return 许可, 不允许发出请求时为 {@link #REJECTED}
+     */
+    public synchronized long tryAcquire() {
+        if(state == State.OPEN){
+            if(System.nanoTime() - openedAt < openDuration)
+                return REJECTED;
+            state = State.HALF_OPEN;
+            generation++;
+            probesIssued = probesSucceeded = 0;
+        }
+        if(state == State.HALF_OPEN){
+            if(probesIssued >= halfOpenCalls)
+                return REJECTED;
+            probesIssued++;
+        }
+        return generation;
+    }
+
+    /**
+     * 报告一次成功的请求.
+     *
+     * @param permit {@link #tryAcquire()} 返回的许可
+     */
+    public synchronized void onSuccess(long permit) {
+        if(permit != generation)
+            return;
+        if(state == State.CLOSED){
+            record(false);
+        }else if(state == State.HALF_OPEN && probesSucceeded < probesIssued){
+            if(++probesSucceeded >= halfOpenCalls)
+                reset();
+        }
+    }
+
+    /**
+     * 报告一次失败的请求 (连接失败, 超时或5xx).
+     *
+     * @param permit {@link #tryAcquire()} 返回的许可
+     */
+    public synchronized void onFailure(long permit) {
+        if(permit != generation)
+            return;
+        if(state == State.CLOSED){
+            record(true);
+            if(windowCount >= minimumCalls && windowFailures >= failureRateThreshold * windowCount)
+                trip();
+        }else if(state == State.HALF_OPEN){
+            trip();
+        }
+    }
+
+    /**
+     * 报告一次与服务器状态无关的失败 (例如等待时被中断), 归还许可而不计入统计.
+     *
+     * @param permit {@link #tryAcquire()} 返回的许可
+     */
+    public synchronized void onIgnored(long permit) {
+        if(permit == generation && state == State.HALF_OPEN && probesIssued > probesSucceeded)
+            probesIssued--;
+    }
+
+    /**
+     * 立即断开, 例如已知服务器正在维护.
+     */
+    public synchronized void trip() {
+        state = State.OPEN;
+        generation++;
+        openedAt = System.nanoTime();
+    }
+
+    /**
+     * 立即恢复关闭状态并清空统计.
+     */
+    public synchronized void reset() {
+        state = State.CLOSED;
+        generation++;
+        windowIndex = windowCount = windowFailures = 0;
+    }
+
+    private void record(boolean failure) {
+        if(windowCount == window.length){
+            if(window[windowIndex])
+                windowFailures--;
+        }else{
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if(failure)
+            windowFailures++;
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    public synchronized State getState() {
+        if(state == State.OPEN && System.nanoTime() - openedAt >= openDuration)
+            return State.HALF_OPEN;
+        return state;
+    }
+
+    /**
+     * @return 关闭状态下最近请求的失败率, 没有请求时为0
+     */
+    public synchronized double getFailureRate() {
+        return windowCount == 0 ? 0 : (double) windowFailures / windowCount;
+    }
+
+    /**
+     * @param unit 时间单位
+     * @return 距离进入半开状态的剩余时间, 未断开时为0
+     */
+    public synchronized long getRemainingOpenTime(TimeUnit unit) {
+        if(state != State.OPEN)
+            return 0;
+        return unit.convert(Math.max(0, openDuration - (System.nanoTime() - openedAt)), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("CircuitBreaker{state=%s, failureRate=%.2f}", getState(), getFailureRate());
+    }
+}
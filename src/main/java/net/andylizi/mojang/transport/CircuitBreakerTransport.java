@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+/**
+ * 按端点断路的传输层.
+ * <p>
+ * 每个端点 ({@link HttpRequest#getEndpoint()}) 拥有一个 {@link CircuitBreaker}.
+ * 连接失败, 超时与5xx响应计为失败, 本地的错误不计入 (参见 {@link #isEndpointFailure(IOException)});
+ * 断路器断开时请求立即以 {@link CircuitOpenException} 失败,
+ * 不会在连接或读取超时上占用线程. 应放在 {@link RateLimitedTransport} 外层, 使断开时也无需等待令牌.
+ *
+ * @author andylizi
+ */
+public class CircuitBreakerTransport implements HttpTransport{
+    private final HttpTransport delegate;
+    private final Supplier<CircuitBreaker> breakerFactory;
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * 使用默认参数的断路器, 参见 {@link CircuitBreaker#CircuitBreaker()}.
+     *
+     * @param delegate 实际发出请求的传输层
+     */
+    public CircuitBreakerTransport(HttpTransport delegate) {
+        this(delegate, CircuitBreaker::new);
+    }
+
+    /**
+     * @param delegate 实际发出请求的传输层
+     * @param breakerFactory 为每个端点创建断路器
+     */
+    public CircuitBreakerTransport(HttpTransport delegate, Supplier<CircuitBreaker> breakerFactory) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.breakerFactory = Objects.requireNonNull(breakerFactory);
+    }
+
+    public HttpTransport getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        String endpoint = request.getEndpoint();
+        if(endpoint == null)
+            return delegate.execute(request);
+        CircuitBreaker breaker = getCircuitBreaker(endpoint);
+        long permit = breaker.tryAcquire();
+        if(permit == CircuitBreaker.REJECTED)
+            throw new CircuitOpenException(endpoint, breaker.getRemainingOpenTime(TimeUnit.MILLISECONDS));
+
+        HttpResponse response;
+        try {
+            response = delegate.execute(request);
+        } catch (IOException ex) {
+            if(isEndpointFailure(ex))
+                breaker.onFailure(permit);
+            else
+                breaker.onIgnored(permit);
+            throw ex;
+        } catch (RuntimeException | Error ex) {
+            breaker.onIgnored(permit);  // 请求参数错误等本地问题
+            throw ex;
+        }
+        if(response.getStatusCode() >= 500)
+            breaker.onFailure(permit);
+        else
+            breaker.onSuccess(permit);
+        return response;
+    }
+
+    /**
+     * 判断请求的异常是否说明端点不可用. 
+     * 连接与读写超时, 连接被拒绝或重置, 以及连接被意外关闭 (包括作为其他异常的原因时) 计为失败; 
+     * 中断, 域名解析失败, TLS证书错误, 等待连接池超时等本地或调用者的问题不计入. 
+     * 子类可重写该方法调整分类. 
+     * 
+     * @param ex 请求抛出的异常
+     * @return 是否计为端点的失败
+     */
+    protected boolean isEndpointFailure(IOException ex) {
+        if(ex instanceof InterruptedIOException && !(ex instanceof SocketTimeoutException))
+            return false;
+        for(Throwable t = ex; t != null; t = t.getCause() == t ? null : t.getCause()){
+            if(t instanceof SocketTimeoutException || t instanceof SocketException || t instanceof EOFException)
+                return true;
+            if(t instanceof SSLException && !(t instanceof SSLHandshakeException) && !(t instanceof SSLPeerUnverifiedException))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param endpoint 端点名称
+     * @return 端点的断路器, 不存在时创建
+     */
+    public CircuitBreaker getCircuitBreaker(String endpoint) {
+        CircuitBreaker breaker = breakers.get(endpoint);
+        return breaker != null ? breaker : breakers.computeIfAbsent(endpoint, k -> breakerFactory.get());
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
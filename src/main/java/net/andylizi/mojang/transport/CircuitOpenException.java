@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.io.IOException;
+
+/**
+ * 端点的断路器已断开, 请求未被发出.
+ * <p>
+ * 此异常在服务器故障期间会被大量抛出, 因此不记录堆栈.
+ *
+ * @author andylizi
+ * @see CircuitBreakerTransport
+ */
+public class CircuitOpenException extends IOException{
+    private final String endpoint;
+    private final long retryAfter;
+
+    /**
+     * @param endpoint 端点名称
+     * @param retryAfter 距离断路器放行探测请求的时间 (毫秒)
+     */
+    public CircuitOpenException(String endpoint, long retryAfter) {
+        super("Circuit open for endpoint " + endpoint + ", retry after " + retryAfter + "ms");
+        this.endpoint = endpoint;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return 距离断路器放行探测请求的时间 (毫秒)
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 一个HTTP请求.
+ *
+ * @author andylizi
+ */
+public class HttpRequest {
+    private final String method;
+    private final URL url;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private RequestBody body;
+    private String endpoint;
+    private String account;
+    private Object templateKey;
+
+    /**
+     * @param method 请求方法, 如<code>GET</code>
+     * @param url URL
+     */
+    public HttpRequest(String method, URL url) {
+        this.method = Objects.requireNonNull(method);
+        this.url = Objects.requireNonNull(url);
+        this.endpoint = url.getPath();
+    }
+
+    /**
+     * 设置请求头.
+     *
+     * @param name 名称
+     * @param value 值
+     * @return this
+     */
+    public HttpRequest header(String name, String value) {
+        headers.put(Objects.requireNonNull(name), Objects.requireNonNull(value));
+        return this;
+    }
+
+    /**
+     * 设置请求体.
+     *
+     * @param body 请求体
+     * @return this
+     */
+    public HttpRequest body(RequestBody body) {
+        this.body = body;
+        return this;
+    }
+
+    /**
+     * 设置端点名称. 用于按端点区分统计/限流等, 默认为URL的路径.
+     *
+     * @param endpoint 端点名称
+     * @return this
+     */
+    public HttpRequest endpoint(String endpoint) {
+        this.endpoint = Objects.requireNonNull(endpoint);
+        return this;
+    }
+
+    /**
+     * 设置发起请求的账户标识. 用于按账户区分限流等, 默认为null.
+     * 标识会被长期保存, 不应使用明文AccessToken.
+     *
+     * @param account 账户标识, 例如 {@link net.andylizi.mojang.utils.Common#createAccountKey(String)}
+     * @return this
+     */
+    public HttpRequest account(String account) {
+        this.account = account;
+        return this;
+    }
+
+    /**
+     * 设置请求模板的缓存键. 传输层可以按此键缓存编码好的请求行与请求头,
+     * 因此键与请求方法都相同的请求, 其URL必须是同一个对象, 请求头也必须相同. 默认为null, 即不缓存.
+     *
+     * @param templateKey 缓存键, 例如账户的 {@link net.andylizi.mojang.api.Session}
+     * @return this
+     * @see NioHttpTransport
+     */
+    public HttpRequest templateKey(Object templateKey) {
+        this.templateKey = templateKey;
+        return this;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public URL getURL() {
+        return url;
+    }
+
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    public RequestBody getBody() {
+        return body;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getAccount() {
+        return account;
+    }
+
+    public Object getTemplateKey() {
+        return templateKey;
+    }
+
+    @Override
+    public String toString() {
+        return method.concat(" ").concat(url.toString());
+    }
+}
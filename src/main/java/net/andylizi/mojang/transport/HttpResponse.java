@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.andylizi.mojang.metrics.RequestTrace;
+
+/**
+ * 一个HTTP响应.
+ * 使用完毕后必须调用 {@link #close()}, 以便底层连接被复用.
+ *
+ * @author andylizi
+ */
+public abstract class HttpResponse implements Closeable{
+
+    /**
+     * @return HTTP状态码
+     */
+    public abstract int getStatusCode();
+
+    /**
+     * 获得响应头.
+     *
+     * @param name 名称, 不区分大小写
+     * @return 值, 不存在时返回null
+     */
+    public abstract String getHeader(String name);
+
+    /**
+     * 获得响应体. 已处理好gzip等编码.
+     *
+     * @return 响应体的输入流
+     * @throws IOException 发生 I/O 错误
+     */
+    public abstract InputStream getBody() throws IOException;
+
+    /**
+     * 响应体的长度.
+     *
+     * @return 字节数, 未知时返回 -1
+     */
+    public long getContentLength(){
+        String value = getHeader("Content-Length");
+        if(value == null)
+            return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * 获得此请求的记录, 用于补充Mojang错误类型等信息. 
+     *
+     * @return 请求记录, 没有设置 {@link net.andylizi.mojang.metrics.RequestListener} 时为null
+     */
+    public RequestTrace getTrace(){
+        return null;
+    }
+
+    /**
+     * 关闭响应并释放连接.
+     * 未读取完的响应体将被丢弃.
+     *
+     * @throws IOException 发生 I/O 错误
+     */
+    @Override
+    public abstract void close() throws IOException;
+}
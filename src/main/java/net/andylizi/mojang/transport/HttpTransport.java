@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * HTTP传输层.
+ * SkinAPI与SecurityAPI的所有请求都经由此接口发出,
+ * 可通过 {@link net.andylizi.mojang.utils.Common#setTransport(HttpTransport)} 替换实现.
+ *
+ * @author andylizi
+ * @see PooledHttpTransport
+ * @see UrlConnectionTransport
+ */
+public interface HttpTransport extends Closeable{
+
+    /**
+     * 执行一个请求.
+     * 返回的响应<b>必须</b>被关闭, 否则连接无法被复用.
+     *
+     * @param request 请求
+     * @return 响应
+     * @throws IOException 发生 I/O 错误
+     */
+    HttpResponse execute(HttpRequest request) throws IOException;
+}
@@ -0,0 +1,568 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+import net.andylizi.mojang.metrics.RequestTrace;
+
+/**
+ * {@link NioHttpTransport} 的一个持久连接.
+ * <p>
+ * 写入与读取各持有一把锁: 请求在写锁下按顺序写出并排队, 响应在读锁下按相同顺序被解析,
+ * 因此多个请求可以在前一个响应到达之前发出 (流水线). 所有缓冲区都是直接缓冲区,
+ * TLS连接的加解密由 {@link SSLEngine} 完成. 读写锁的获取顺序始终为先读后写.
+ *
+ * @author andylizi
+ */
+final class NioConnection implements Closeable{
+    private static final int PLAIN_BUFFER_SIZE = 16 * 1024;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final Selector readSelector;
+    private final Selector writeSelector;
+    private final int readTimeout;
+
+    /** 待写出的明文, 写模式 */
+    private final ByteBuffer appOut;
+    /** 待发送的密文, 读模式 */
+    private final ByteBuffer netOut;
+    /** 已收到未解密的密文, 写模式 */
+    private final ByteBuffer netIn;
+    /** 已收到未解析的明文, 读模式 */
+    private final ByteBuffer appIn;
+
+    private final Object writeLock = new Object();
+    private final Object readLock = new Object();
+    private final Queue<Exchange> queue = new ConcurrentLinkedQueue<>();
+    private final ResponseParser parser = new ResponseParser();
+    private final OutputStream output = new Output();
+
+    private volatile IOException failure;
+    private volatile boolean keepAlive = true;
+    private volatile long lastUsed = System.nanoTime();
+    private volatile int served;
+
+    /** 由所属的 {@link NioHttpTransport} 在其路由锁下维护 */
+    int inFlight;
+
+    private NioConnection(SocketChannel channel, SSLEngine engine, int readTimeout) throws IOException {
+        this.channel = channel;
+        this.engine = engine;
+        this.readTimeout = readTimeout;
+        this.readSelector = Selector.open();
+        this.writeSelector = Selector.open();
+        if(engine == null){
+            appOut = ByteBuffer.allocateDirect(PLAIN_BUFFER_SIZE);
+            appIn = ByteBuffer.allocateDirect(PLAIN_BUFFER_SIZE);
+            netOut = netIn = null;
+        }else{
+            int appSize = engine.getSession().getApplicationBufferSize();
+            int netSize = engine.getSession().getPacketBufferSize();
+            appOut = ByteBuffer.allocateDirect(appSize);
+            appIn = ByteBuffer.allocateDirect(appSize);
+            netOut = ByteBuffer.allocateDirect(netSize);
+            netIn = ByteBuffer.allocateDirect(netSize);
+            netOut.flip();
+        }
+        appIn.flip();
+    }
+
+    /**
+     * 建立连接, 必要时完成TLS握手.
+     *
+     * @param host 主机名
+     * @param port 端口
+     * @param sslContext 为null时使用明文连接
+     * @param connectTimeout 连接超时 (毫秒), 包括TLS握手
+     * @param readTimeout 读取超时 (毫秒)
+     * @param trace 请求记录, 分别记录连接与TLS握手的耗时, 可以为null
+     * @return 连接
+     * @throws IOException 无法连接
+     */
+    static NioConnection open(String host, int port, SSLContext sslContext, int connectTimeout, int readTimeout, RequestTrace trace) throws IOException{
+        SocketChannel channel = SocketChannel.open();
+        NioConnection conn = null;
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.socket().setKeepAlive(true);
+            SSLEngine engine = null;
+            if(sslContext != null){
+                engine = sslContext.createSSLEngine(host, port);
+                engine.setUseClientMode(true);
+                SSLParameters params = engine.getSSLParameters();
+                params.setEndpointIdentificationAlgorithm("HTTPS");
+                engine.setSSLParameters(params);
+            }
+            conn = new NioConnection(channel, engine, readTimeout);
+            conn.connect(new InetSocketAddress(host, port), connectTimeout);
+            if(trace != null)
+                trace.endPhase(RequestTrace.Phase.CONNECT);
+            if(engine != null){
+                conn.handshake(connectTimeout);
+                if(trace != null)
+                    trace.endPhase(RequestTrace.Phase.HANDSHAKE);
+            }
+            return conn;
+        } catch (IOException | RuntimeException ex) {
+            if(conn != null)
+                conn.close();
+            else
+                channel.close();
+            throw ex;
+        }
+    }
+
+    private void connect(InetSocketAddress address, int timeout) throws IOException{
+        if(address.isUnresolved())
+            throw new UnknownHostException(address.getHostString());
+        SelectionKey key = channel.register(writeSelector, SelectionKey.OP_CONNECT);
+        if(!channel.connect(address)){
+            long deadline = System.nanoTime() + timeout * 1_000_000L;
+            while(!channel.finishConnect()){
+                long wait = (deadline - System.nanoTime()) / 1_000_000L;
+                if(wait <= 0 || writeSelector.select(wait) == 0 && System.nanoTime() - deadline >= 0)
+                    throw new SocketTimeoutException("Connect timed out");
+                writeSelector.selectedKeys().clear();
+            }
+        }
+        key.interestOps(SelectionKey.OP_WRITE);
+        channel.register(readSelector, SelectionKey.OP_READ);
+    }
+
+    private void handshake(int timeout) throws IOException{
+        long deadline = System.nanoTime() + timeout * 1_000_000L;
+        engine.beginHandshake();
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        while(status != SSLEngineResult.HandshakeStatus.FINISHED
+                && status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING){
+            if(System.nanoTime() - deadline >= 0)
+                throw new SocketTimeoutException("TLS handshake timed out");
+            switch(status){
+                case NEED_TASK:
+                    runTasks();
+                    status = engine.getHandshakeStatus();
+                    break;
+                case NEED_WRAP:
+                    status = wrap(EMPTY);
+                    break;
+                default:  // NEED_UNWRAP, NEED_UNWRAP_AGAIN
+                    netIn.flip();
+                    appIn.compact();
+                    SSLEngineResult result;
+                    try {
+                        result = engine.unwrap(netIn, appIn);
+                    } finally {
+                        appIn.flip();
+                        netIn.compact();
+                    }
+                    status = result.getHandshakeStatus();
+                    if(result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW && readNet() < 0)
+                        throw new EOFException("Connection closed during TLS handshake");
+                    if(result.getStatus() == SSLEngineResult.Status.CLOSED)
+                        throw new SSLException("Connection closed during TLS handshake");
+            }
+        }
+    }
+
+    /**
+     * 发出请求并等待响应.
+     *
+     * @param head 请求行与请求头, 不包括结尾的空行
+     * @param request 请求
+     * @param trace 请求记录, 可以为null
+     * @return 已完整读取的响应
+     * @throws IOException 发生 I/O 错误. 复用的连接在请求收到响应之前失败时为 {@link StaleConnectionException}
+     */
+    Exchange exchange(byte[] head, HttpRequest request, RequestTrace trace) throws IOException{
+        Exchange exchange = new Exchange(request);
+        boolean reused;
+        synchronized(writeLock){
+            if(!isUsable()){
+                IOException failure = this.failure;
+                throw new StaleConnectionException(failure != null ? new IOException("Connection failed", failure)
+                        : new EOFException("Connection closed"), false);
+            }
+            reused = served > 0 || !queue.isEmpty();
+            queue.add(exchange);
+            try {
+                writeRequest(head, request.getBody());
+            } catch (IOException | RuntimeException ex) {
+                exchange.failure = ex instanceof IOException ? (IOException) ex : new IOException(ex);
+                fail(exchange.failure);
+            }
+        }
+        if(trace != null)
+            trace.endPhase(RequestTrace.Phase.SEND);
+
+        synchronized(readLock){
+            try {
+                while(queue.peek() != exchange){
+                    checkFailure(exchange);
+                    readLock.wait();
+                }
+                checkFailure(exchange);
+                readResponse(exchange, trace);
+                return exchange;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                InterruptedIOException interrupted = new InterruptedIOException("Interrupted while waiting for response");
+                fail(interrupted);
+                throw interrupted;
+            } catch (StaleConnectionException ex) {
+                throw ex;
+            } catch (IOException ex) {
+                fail(ex);
+                if(!exchange.started && reused && !(ex instanceof SocketTimeoutException))
+                    throw new StaleConnectionException(ex, true);
+                throw ex;
+            } finally {
+                queue.remove(exchange);
+                lastUsed = System.nanoTime();
+                readLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 检查在轮到本请求读取响应之前连接是否已失败.
+     * 因其他请求而失败时, 本请求没有收到任何响应, 抛出可重试的 {@link StaleConnectionException},
+     * 每个请求得到各自的异常.
+     */
+    private void checkFailure(Exchange exchange) throws IOException{
+        if(exchange.failure != null)
+            throw exchange.failure;
+        IOException failure = this.failure;
+        if(failure != null)
+            throw new StaleConnectionException(new IOException("Connection failed by an earlier request", failure), true);
+        if(!keepAlive)
+            throw new StaleConnectionException(new EOFException("Connection closed by server"), true);
+    }
+
+    private void writeRequest(byte[] head, RequestBody body) throws IOException{
+        output.write(head);
+        if(body != null){
+            byte[] buffered = null;
+            long length = body.getContentLength();
+            if(length < 0){
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                body.writeTo(out);
+                buffered = out.toByteArray();
+                length = buffered.length;
+            }
+            putAscii("Content-Type: ");
+            putAscii(NioHttpTransport.checkHeaderValue(body.getContentType()));
+            putAscii("\r\nContent-Length: ");
+            putAscii(Long.toString(length));
+            putAscii("\r\n\r\n");
+            if(buffered != null)
+                output.write(buffered);
+            else
+                body.writeTo(output);
+        }else{
+            putAscii("\r\n");
+        }
+        flushApp();
+    }
+
+    private void readResponse(Exchange exchange, RequestTrace trace) throws IOException{
+        parser.reset("HEAD".equals(exchange.request.getMethod()));
+        boolean first = true;
+        while(true){
+            if(appIn.hasRemaining()){
+                if(first && trace != null)
+                    trace.endPhase(RequestTrace.Phase.WAIT);
+                first = false;
+                exchange.started = true;
+                if(parser.parse(appIn))
+                    break;
+            }
+            if(!fill()){
+                if(parser.onEndOfStream())
+                    break;
+                throw new EOFException("Connection closed by server");
+            }
+        }
+        served++;
+        exchange.statusCode = parser.getStatusCode();
+        exchange.headers = parser.getHeaders();
+        exchange.body = parser.getBody();
+        exchange.bodyLength = parser.getBodyLength();
+        if(!parser.isKeepAlive()){
+            keepAlive = false;
+            close();
+        }
+    }
+
+    /**
+     * @return 连接是否可以接受新请求
+     */
+    boolean isUsable() {
+        return failure == null && keepAlive && channel.isOpen();
+    }
+
+    /**
+     * @return 最后一次完成请求的时间 ({@link System#nanoTime()})
+     */
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    private void fail(IOException ex) {
+        if(failure == null)
+            failure = ex;
+        close();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            // 忽略
+        }
+        // 正在select的线程将得到ClosedSelectorException, 在readChannel/writeFully中转换为IOException
+        try {
+            readSelector.close();
+        } catch (IOException ex) {
+            // 忽略
+        }
+        try {
+            writeSelector.close();
+        } catch (IOException ex) {
+            // 忽略
+        }
+    }
+
+    /* ---------------- 底层读写 ---------------- */
+
+    private void putAscii(String s) throws IOException{
+        for(int i = 0, len = s.length(); i < len; i++){
+            if(!appOut.hasRemaining())
+                flushApp();
+            appOut.put((byte) s.charAt(i));
+        }
+    }
+
+    private void flushApp() throws IOException{
+        appOut.flip();
+        try {
+            if(engine == null){
+                writeFully(appOut);
+            }else{
+                while(appOut.hasRemaining())
+                    wrap(appOut);
+            }
+        } finally {
+            appOut.clear();
+        }
+    }
+
+    /**
+     * 加密并发送, 调用者必须持有写锁或处于握手阶段.
+     */
+    private SSLEngineResult.HandshakeStatus wrap(ByteBuffer src) throws IOException{
+        netOut.clear();
+        SSLEngineResult result;
+        try {
+            result = engine.wrap(src, netOut);
+        } finally {
+            netOut.flip();
+        }
+        if(result.getStatus() == SSLEngineResult.Status.CLOSED)
+            throw new SSLException("TLS connection closed");
+        writeFully(netOut);
+        SSLEngineResult.HandshakeStatus status = result.getHandshakeStatus();
+        if(status == SSLEngineResult.HandshakeStatus.NEED_TASK){
+            runTasks();
+            status = engine.getHandshakeStatus();
+        }
+        return status;
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException{
+        while(buf.hasRemaining()){
+            if(channel.write(buf) == 0){
+                try {
+                    if(writeSelector.select(readTimeout) == 0)
+                        throw new SocketTimeoutException("Write timed out");
+                    writeSelector.selectedKeys().clear();
+                } catch (ClosedSelectorException ex) {
+                    throw new IOException("Connection closed", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取更多明文到 {@link #appIn}, 调用者必须持有读锁.
+     *
+     * @return 是否读到了数据, 连接已关闭时为false
+     */
+    private boolean fill() throws IOException{
+        if(engine == null){
+            appIn.compact();
+            try {
+                return readChannel(appIn) > 0;
+            } finally {
+                appIn.flip();
+            }
+        }
+        while(true){
+            netIn.flip();
+            appIn.compact();
+            SSLEngineResult result;
+            try {
+                result = engine.unwrap(netIn, appIn);
+            } finally {
+                appIn.flip();
+                netIn.compact();
+            }
+            switch(result.getHandshakeStatus()){
+                case NEED_TASK:
+                    runTasks();
+                    break;
+                case NEED_WRAP:
+                    // 例如TLS 1.3的KeyUpdate
+                    synchronized(writeLock){
+                        wrap(EMPTY);
+                    }
+                    break;
+                default:
+            }
+            switch(result.getStatus()){
+                case OK:
+                    if(result.bytesProduced() > 0)
+                        return true;
+                    break;
+                case BUFFER_UNDERFLOW:
+                    if(readNet() < 0)
+                        return false;
+                    break;
+                case CLOSED:
+                    return false;
+                default:
+                    throw new SSLException("Unexpected TLS state: " + result.getStatus());
+            }
+        }
+    }
+
+    private int readNet() throws IOException{
+        return readChannel(netIn);
+    }
+
+    private int readChannel(ByteBuffer dst) throws IOException{
+        int n;
+        while((n = channel.read(dst)) == 0){
+            if(!dst.hasRemaining())
+                throw new IOException("Buffer full");
+            try {
+                if(readSelector.select(readTimeout) == 0)
+                    throw new SocketTimeoutException("Read timed out");
+                readSelector.selectedKeys().clear();
+            } catch (ClosedSelectorException ex) {
+                throw new IOException("Connection closed", ex);
+            }
+        }
+        return n;
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while((task = engine.getDelegatedTask()) != null)
+            task.run();
+    }
+
+    /**
+     * 将请求体写入 {@link #appOut}, 写满时发送.
+     */
+    private final class Output extends OutputStream{
+        @Override
+        public void write(int b) throws IOException {
+            if(!appOut.hasRemaining())
+                flushApp();
+            appOut.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while(len > 0){
+                if(!appOut.hasRemaining())
+                    flushApp();
+                int n = Math.min(len, appOut.remaining());
+                appOut.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+    }
+
+    /**
+     * 一次请求与其响应.
+     */
+    static final class Exchange {
+        final HttpRequest request;
+        volatile boolean started;
+        /** 写出本请求时发生的错误 */
+        IOException failure;
+        int statusCode;
+        String[] headers;
+        byte[] body;
+        int bodyLength;
+
+        Exchange(HttpRequest request) {
+            this.request = request;
+        }
+    }
+
+    /**
+     * 复用的连接在请求收到任何响应之前失败, 通常是服务器已关闭空闲连接.
+     * 未发出的请求总是可以在新连接上重试, 已发出的只有幂等请求可以重试.
+     */
+    static final class StaleConnectionException extends IOException{
+        final boolean sent;
+
+        StaleConnectionException(IOException cause, boolean sent) {
+            super(cause.getMessage(), cause);
+            this.sent = sent;
+        }
+    }
+}
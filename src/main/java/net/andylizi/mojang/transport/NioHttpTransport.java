@@ -0,0 +1,496 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import net.andylizi.mojang.metrics.RequestListener;
+import net.andylizi.mojang.metrics.RequestTrace;
+import net.andylizi.mojang.utils.IOUtils;
+import static net.andylizi.mojang.utils.Common.*;
+
+/**
+ * 基于 {@link java.nio.channels.SocketChannel} 与 {@link javax.net.ssl.SSLEngine} 的HTTP/1.1传输层.
+ * <p>
+ * 每个主机只保持少量持久连接, 请求以流水线方式在其上发出, 不必等待前一个响应.
+ * 设置了 {@link HttpRequest#templateKey(Object) 模板键} 的请求, 其请求行与请求头按键缓存为编码好的字节 (请求模板),
+ * 重复的请求 (例如同一会话的 <code>resetSkin</code>) 只需比较URL对象并写出模板与请求体.
+ * 模板缓存按最近使用淘汰. 响应从直接缓冲区中增量解析, 并被完整读入内存,
+ * 适合Mojang API这类响应体很小的接口.
+ * <p>
+ * 复用的连接在请求收到响应之前断开时 (通常是服务器关闭了空闲连接), 幂等请求会在新连接上重试一次.
+ * 非幂等请求 (POST) 只在空闲的连接上发出, 不参与流水线.
+ * 连接因超时等错误失败时, 排在其后且尚未收到响应的请求同样在新连接上重试.
+ * <p>
+ * 此传输层不是默认实现, 需要时通过 {@link net.andylizi.mojang.utils.Common#setTransport(HttpTransport)} 设置,
+ * 可以与 {@link RateLimitedTransport} 和 {@link CircuitBreakerTransport} 组合使用.
+ *
+ * @author andylizi
+ */
+public class NioHttpTransport implements HttpTransport{
+    private static final String USER_AGENT = "SkinAPI/2.0";
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * 每个模板键最多缓存的请求模板数
+     */
+    private static final int TEMPLATES_PER_KEY = 8;
+
+    /**
+     * 最多缓存模板的键数, 超过时淘汰最久未使用的键
+     */
+    private static final int TEMPLATE_KEYS_LIMIT = 16384;
+
+    private final SSLContext sslContext;
+    private final int connectionsPerHost;
+    private final int pipelineDepth;
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+    private final Map<Object, Template[]> templates = new LinkedHashMap<Object, Template[]>(256, 0.75F, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Template[]> eldest) {
+            return size() > TEMPLATE_KEYS_LIMIT;
+        }
+    };
+    private volatile int connectTimeout = 6000;
+    private volatile int readTimeout = 6000;
+    private volatile boolean closed;
+
+    /**
+     * 每个主机4个连接, 每个连接最多8个进行中的请求, 使用默认的SSLContext.
+     *
+     * @throws NoSuchAlgorithmException 无法获得默认的SSLContext
+     */
+    public NioHttpTransport() throws NoSuchAlgorithmException {
+        this(SSLContext.getDefault(), 4, 8);
+    }
+
+    /**
+     * @param sslContext 用于HTTPS连接
+     * @param connectionsPerHost 每个主机最多打开的连接数
+     * @param pipelineDepth 每个连接最多同时进行中的请求数
+     */
+    public NioHttpTransport(SSLContext sslContext, int connectionsPerHost, int pipelineDepth) {
+        if(connectionsPerHost <= 0)
+            throw new IllegalArgumentException("connectionsPerHost must be positive");
+        if(pipelineDepth <= 0)
+            throw new IllegalArgumentException("pipelineDepth must be positive");
+        this.sslContext = Objects.requireNonNull(sslContext);
+        this.connectionsPerHost = connectionsPerHost;
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    /**
+     * 设置连接超时, 包括TLS握手. 只影响之后建立的连接.
+     *
+     * @param connectTimeout 毫秒
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        if(connectTimeout <= 0)
+            throw new IllegalArgumentException("connectTimeout must be positive");
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * 设置读取超时. 只影响之后建立的连接.
+     *
+     * @param readTimeout 毫秒
+     */
+    public void setReadTimeout(int readTimeout) {
+        if(readTimeout <= 0)
+            throw new IllegalArgumentException("readTimeout must be positive");
+        this.readTimeout = readTimeout;
+    }
+
+    public int getConnectionsPerHost() {
+        return connectionsPerHost;
+    }
+
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        if(closed)
+            throw new IOException("Transport closed");
+        RequestListener listener = Common.getRequestListener();
+        RequestTrace trace = null;
+        if(listener != RequestListener.NOOP){
+            trace = new RequestTrace(request.getMethod(), request.getEndpoint());
+            listener.onRequestStart(trace);
+        }
+        try {
+            Route route = route(request.getURL());
+            byte[] head = template(request);
+            boolean idempotent = !"POST".equals(request.getMethod()) && !"PATCH".equals(request.getMethod());
+            for(int attempt = 0;; attempt++){
+                NioConnection conn = route.acquire(idempotent, trace);
+                try {
+                    if(trace != null)
+                        trace.endPhase(RequestTrace.Phase.CONNECT);
+                    NioConnection.Exchange exchange = conn.exchange(head, request, trace);
+                    if(trace != null)
+                        trace.setStatusCode(exchange.statusCode);
+                    return new NioResponse(exchange, listener, trace);
+                } catch (NioConnection.StaleConnectionException ex) {
+                    if(attempt > 0 || (ex.sent && !idempotent))
+                        throw (IOException) ex.getCause();
+                } finally {
+                    route.release(conn);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            if(trace != null){
+                trace.setError(ex.getClass().getSimpleName());
+                trace.finish(listener);
+            }
+            throw ex;
+        }
+    }
+
+    private Route route(URL url) throws IOException{
+        String protocol = url.getProtocol();
+        boolean tls;
+        if("https".equals(protocol))
+            tls = true;
+        else if("http".equals(protocol))
+            tls = false;
+        else
+            throw new IOException("Unsupported protocol: " + protocol);
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        String key = protocol.concat("://").concat(url.getHost()).concat(":").concat(String.valueOf(port));
+        Route route = routes.get(key);
+        if(route == null){
+            Route created = new Route(url.getHost(), port, tls);
+            route = routes.putIfAbsent(key, created);
+            if(route == null)
+                route = created;
+        }
+        return route;
+    }
+
+    /**
+     * 获得请求行与请求头的编码, 优先使用该模板键缓存的模板.
+     */
+    private byte[] template(HttpRequest request) {
+        Object key = request.getTemplateKey();
+        if(key == null)
+            return new Template(request).bytes;
+        Template[] cached;
+        synchronized(templates){
+            cached = templates.get(key);
+        }
+        if(cached != null){
+            for(Template template : cached){
+                if(template.matches(request))
+                    return template.bytes;
+            }
+        }
+        Template template = new Template(request);
+        synchronized(templates){
+            Template[] old = templates.get(key);
+            Template[] updated;
+            if(old == null){
+                updated = new Template[]{ template };
+            }else{
+                updated = new Template[Math.min(old.length + 1, TEMPLATES_PER_KEY)];
+                updated[0] = template;
+                System.arraycopy(old, 0, updated, 1, updated.length - 1);
+            }
+            templates.put(key, updated);
+        }
+        return template.bytes;
+    }
+
+    /**
+     * 检查请求头的值中没有换行等控制字符.
+     *
+     * @param value 值
+     * @return value
+     * @throws IllegalArgumentException 包含非法字符
+     */
+    static String checkHeaderValue(String value) throws IllegalArgumentException{
+        for(int i = 0, len = value.length(); i < len; i++){
+            char c = value.charAt(i);
+            if((c < 0x20 && c != '\t') || c == 0x7F || c > 0xFF)
+                throw new IllegalArgumentException("Illegal character in header value: " + value);
+        }
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for(Route route : routes.values())
+            route.closeAll();
+        routes.clear();
+        synchronized(templates){
+            templates.clear();
+        }
+    }
+
+    /**
+     * 编码好的请求行与请求头, 不包括Content-Type, Content-Length与结尾的空行.
+     */
+    private static final class Template {
+        final String method;
+        final URL url;
+        final boolean bodyless;
+        final byte[] bytes;
+
+        Template(HttpRequest request) {
+            URL url = request.getURL();
+            this.method = request.getMethod();
+            this.url = url;
+            this.bodyless = request.getBody() == null;
+            String host = url.getHost();
+            int port = url.getPort();
+            String file = url.getFile();
+
+            StringBuilder builder = new StringBuilder(256)
+                    .append(checkToken(method)).append(' ').append(file.isEmpty() ? "/" : checkHeaderValue(file)).append(" HTTP/1.1\r\n")
+                    .append("Host: ").append(checkHeaderValue(host));
+            if(port != -1 && port != url.getDefaultPort())
+                builder.append(':').append(port);
+            builder.append("\r\n");
+            boolean userAgent = false;
+            for(Map.Entry<String, String> header : request.getHeaders().entrySet()){
+                String name = checkToken(header.getKey());
+                if(name.equalsIgnoreCase("Host") || name.equalsIgnoreCase("Content-Length")
+                        || name.equalsIgnoreCase("Content-Type") || name.equalsIgnoreCase("Transfer-Encoding"))
+                    continue;
+                userAgent |= name.equalsIgnoreCase("User-Agent");
+                builder.append(name).append(": ").append(checkHeaderValue(header.getValue())).append("\r\n");
+            }
+            if(!userAgent)
+                builder.append("User-Agent: ").append(USER_AGENT).append("\r\n");
+            if(bodyless && ("POST".equals(method) || "PUT".equals(method)))
+                builder.append("Content-Length: 0\r\n");
+            this.bytes = builder.toString().getBytes(ISO_8859_1);
+        }
+
+        /**
+         * 同一模板键下, URL对象与方法相同即可复用, 请求头由 {@link HttpRequest#templateKey(Object)} 的约定保证相同.
+         */
+        boolean matches(HttpRequest request) {
+            return url == request.getURL() && method.equals(request.getMethod())
+                    && bodyless == (request.getBody() == null);
+        }
+
+        private static String checkToken(String token) {
+            if(token.isEmpty())
+                throw new IllegalArgumentException("Empty token");
+            for(int i = 0, len = token.length(); i < len; i++){
+                char c = token.charAt(i);
+                if(c <= 0x20 || c >= 0x7F || "()<>@,;:\\\"/[]?={}".indexOf(c) >= 0)
+                    throw new IllegalArgumentException("Illegal character in token: " + token);
+            }
+            return token;
+        }
+    }
+
+    /**
+     * 一个主机的所有连接.
+     */
+    private final class Route {
+        final String host;
+        final int port;
+        final boolean tls;
+        final List<NioConnection> connections = new ArrayList<>();
+        int connecting;
+        /** 等待连接的线程, 按到达顺序分配, 避免被后来者反复抢先 */
+        final ArrayDeque<Thread> waiters = new ArrayDeque<>();
+
+        Route(String host, int port, boolean tls) {
+            this.host = host;
+            this.port = port;
+            this.tls = tls;
+        }
+
+        /**
+         * 选择进行中请求最少的连接, 必要时建立新连接.
+         */
+        NioConnection acquire(boolean idempotent, RequestTrace trace) throws IOException{
+            int limit = idempotent ? pipelineDepth : 1;
+            synchronized(this){
+                Thread self = Thread.currentThread();
+                waiters.addLast(self);
+                try {
+                    while(true){
+                        if(closed)
+                            throw new IOException("Transport closed");
+                        if(waiters.peekFirst() == self){
+                            NioConnection best = null;
+                            long now = System.nanoTime();
+                            for(Iterator<NioConnection> it = connections.iterator(); it.hasNext();){
+                                NioConnection conn = it.next();
+                                if(conn.inFlight == 0 && (!conn.isUsable() || now - conn.getLastUsed() > IDLE_TIMEOUT)){
+                                    conn.close();
+                                    it.remove();
+                                }else if(conn.isUsable() && (best == null || conn.inFlight < best.inFlight)){
+                                    best = conn;
+                                }
+                            }
+                            boolean canOpen = connections.size() + connecting < connectionsPerHost;
+                            if(best != null && best.inFlight < limit && (best.inFlight == 0 || !canOpen)){
+                                best.inFlight++;
+                                return best;
+                            }
+                            if(canOpen){
+                                connecting++;
+                                break;
+                            }
+                        }
+                        wait();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a connection");
+                } finally {
+                    waiters.remove(self);
+                    notifyAll();
+                }
+            }
+
+            NioConnection conn = null;
+            try {
+                conn = NioConnection.open(host, port, tls ? sslContext : null, connectTimeout, readTimeout, trace);
+            } finally {
+                synchronized(this){
+                    connecting--;
+                    if(conn != null){
+                        conn.inFlight = 1;
+                        connections.add(conn);
+                    }
+                    notifyAll();
+                }
+            }
+            return conn;
+        }
+
+        synchronized void release(NioConnection conn) {
+            conn.inFlight--;
+            if(!conn.isUsable() && conn.inFlight == 0){
+                conn.close();
+                connections.remove(conn);
+            }
+            notifyAll();
+        }
+
+        synchronized void closeAll() {
+            for(NioConnection conn : connections)
+                conn.close();
+            connections.clear();
+            notifyAll();
+        }
+    }
+
+    private static final class NioResponse extends HttpResponse{
+        private static final byte[] EMPTY = new byte[0];
+
+        private final int statusCode;
+        private final String[] headers;
+        private final byte[] body;
+        private final int bodyLength;
+        private final RequestListener listener;
+        private final RequestTrace trace;
+        private InputStream stream;
+        private boolean closed;
+
+        NioResponse(NioConnection.Exchange exchange, RequestListener listener, RequestTrace trace) {
+            this.statusCode = exchange.statusCode;
+            this.headers = exchange.headers;
+            this.body = exchange.body;
+            this.bodyLength = exchange.bodyLength;
+            this.listener = listener;
+            this.trace = trace;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            for(int i = headers.length - 2; i >= 0; i -= 2){
+                if(headers[i].equalsIgnoreCase(name))
+                    return headers[i + 1];
+            }
+            return null;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if(closed)
+                throw new IOException("Response closed");
+            if(stream == null)
+                stream = IOUtils.handleInputStream(body == null ? EMPTY : body, 0, bodyLength, getHeader("Content-Encoding"), trace);
+            return stream;
+        }
+
+        @Override
+        public long getContentLength() {
+            return bodyLength;
+        }
+
+        @Override
+        public RequestTrace getTrace() {
+            return trace;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(closed)
+                return;
+            closed = true;
+            if(stream != null)
+                stream.close();
+            if(trace != null){
+                trace.endPhase(RequestTrace.Phase.RECEIVE);
+                trace.finish(listener);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder().append('{')
+                    .append("status:").append(statusCode)
+                    .append(",headers:").append(Arrays.toString(headers))
+                    .append(",length:").append(bodyLength)
+                    .append('}').toString();
+        }
+    }
+}
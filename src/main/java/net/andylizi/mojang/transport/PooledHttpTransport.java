@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 复用持久连接的传输层. 默认实现.
+ * <p>
+ * 连接复用由JDK的keep-alive缓存完成, 但只有在响应体被完整读取并关闭后连接才会被放回缓存.
+ * 此类在响应关闭时读完剩余的响应体, 使连接能被复用, 避免重复的TCP/TLS握手.
+ * <p>
+ * 默认不限制并发数. 指定每个主机的连接数上限时, 超出上限的请求最多等待连接超时的时间,
+ * 之后抛出IOException. 将上限设为keep-alive缓存的容量 (<code>http.maxConnections</code>, 默认为5)
+ * 可以保证每个打开的连接都能被复用, 但所有线程的并发请求数也会被限制在这个值.
+ * <p>
+ * HTTP/2多路复用需要Java 11的<code>java.net.http.HttpClient</code>,
+ * 如有需要可另行实现 {@link HttpTransport}.
+ *
+ * @author andylizi
+ */
+public class PooledHttpTransport extends UrlConnectionTransport{
+    /**
+     * 关闭响应时最多读取并丢弃的字节数. 超过此值时直接断开连接.
+     */
+    private static final int DRAIN_LIMIT = 64 * 1024;
+    private static final int DEFAULT_ACQUIRE_TIMEOUT = 6000;
+
+    private final int maxConnectionsPerHost;
+    private final ConcurrentMap<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * 不限制每个主机的连接数.
+     */
+    public PooledHttpTransport() {
+        this(0);
+    }
+
+    /**
+     * @param maxConnectionsPerHost 每个主机最多同时打开的连接数, 为0时不限制
+     */
+    public PooledHttpTransport(int maxConnectionsPerHost) {
+        if(maxConnectionsPerHost < 0)
+            throw new IllegalArgumentException("maxConnectionsPerHost must not be negative");
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * @return 每个主机最多同时打开的连接数, 为0时不限制
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        Semaphore permits = permits(request.getURL());
+        if(permits == null)
+            return super.execute(request);
+        int timeout = getConnectTimeout() >= 0 ? getConnectTimeout() : DEFAULT_ACQUIRE_TIMEOUT;
+        try {
+            if(!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+                throw new IOException("Timed out waiting for a connection to " + request.getURL().getHost());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection");
+        }
+        boolean success = false;
+        try {
+            HttpResponse response = super.execute(request);
+            success = true;
+            return response;
+        } finally {
+            if(!success)
+                permits.release();
+        }
+    }
+
+    @Override
+    protected void release(HttpRequest request, HttpURLConnection conn, InputStream body) throws IOException {
+        try {
+            if(body == null)
+                body = rawStream(conn);
+            if(body != null){
+                if(drain(body)){
+                    body.close();
+                }else{
+                    conn.disconnect();
+                    closeQuietly(body);
+                }
+            }
+        } catch (IOException ex) {
+            conn.disconnect();
+            closeQuietly(body);
+        } finally {
+            Semaphore permits = permits(request.getURL());
+            if(permits != null)
+                permits.release();
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if(in == null)
+            return;
+        try {
+            in.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * @return 主机的连接许可, 不限制连接数时为null
+     */
+    private Semaphore permits(URL url) {
+        if(maxConnectionsPerHost == 0)
+            return null;
+        String key = url.getProtocol().concat("://").concat(url.getHost()).concat(":")
+                .concat(String.valueOf(url.getPort() == -1 ? url.getDefaultPort() : url.getPort()));
+        Semaphore permits = hosts.get(key);
+        if(permits == null){
+            Semaphore created = new Semaphore(maxConnectionsPerHost, true);
+            permits = hosts.putIfAbsent(key, created);
+            if(permits == null)
+                permits = created;
+        }
+        return permits;
+    }
+
+    private static InputStream rawStream(HttpURLConnection conn) throws IOException{
+        InputStream in = conn.getErrorStream();
+        return in != null ? in : (conn.getResponseCode() < 400 ? conn.getInputStream() : null);
+    }
+
+    /**
+     * 读取并丢弃剩余内容.
+     *
+     * @return 是否已读到流末尾
+     */
+    private static boolean drain(InputStream in) throws IOException{
+        byte[] buf = new byte[512];
+        int total = 0;
+        int len;
+        while((len = in.read(buf)) != -1){
+            total += len;
+            if(total > DRAIN_LIMIT)
+                return false;
+        }
+        return true;
+    }
+}
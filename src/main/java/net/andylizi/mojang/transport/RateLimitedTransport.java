@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 按端点和账户限流的传输层.
+ * <p>
+ * 每个端点 ({@link HttpRequest#getEndpoint()}) 与每个账户 ({@link HttpRequest#getAccount()})
+ * 各自拥有一个 {@link RateLimiter}, 请求需同时取得两者的令牌才会被发出.
+ * 服务器返回 <code>429 Too Many Requests</code> 时两者的速率都会降低, 并遵守Retry-After.
+ * <p>
+ * 默认的传输层不限流, 需要时自行包装并通过 {@link net.andylizi.mojang.utils.Common#setTransport(HttpTransport)} 设置.
+ * 限流对同一实例的所有调用者生效; 不需要固定上限时, 可以用很高的初始速率创建限流器,
+ * 使其只在收到429后才降低速率.
+ *
+ * @author andylizi
+ */
+public class RateLimitedTransport implements HttpTransport{
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * 限流器数量超过此值时清理长时间未使用的限流器.
+     */
+    private static final int PURGE_THRESHOLD = 1024;
+    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toNanos(10);
+    /**
+     * 两次清理之间的最短间隔
+     */
+    private static final long PURGE_INTERVAL = IDLE_TIMEOUT / 10;
+
+    private final HttpTransport delegate;
+    private final Supplier<RateLimiter> endpointLimiterFactory;
+    private final Supplier<RateLimiter> accountLimiterFactory;
+    private final ConcurrentMap<String, RateLimiter> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RateLimiter> accounts = new ConcurrentHashMap<>();
+    private final AtomicLong nextPurge = new AtomicLong(System.nanoTime());
+
+    /**
+     * 使用默认限流参数.
+     * 每个端点初始10次/秒, 最高50次/秒; 每个账户初始1次/秒, 最高5次/秒.
+     *
+     * @param delegate 实际发出请求的传输层
+     */
+    public RateLimitedTransport(HttpTransport delegate) {
+        this(delegate, () -> new RateLimiter(10, 0.1, 50, 10), () -> new RateLimiter(1, 0.05, 5, 3));
+    }
+
+    /**
+     * @param delegate 实际发出请求的传输层
+     * @param endpointLimiterFactory 为每个端点创建限流器, 为null时不按端点限流
+     * @param accountLimiterFactory 为每个账户创建限流器, 为null时不按账户限流
+     */
+    public RateLimitedTransport(HttpTransport delegate, Supplier<RateLimiter> endpointLimiterFactory, Supplier<RateLimiter> accountLimiterFactory) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.endpointLimiterFactory = endpointLimiterFactory;
+        this.accountLimiterFactory = accountLimiterFactory;
+    }
+
+    public HttpTransport getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        RateLimiter endpoint = limiter(endpoints, endpointLimiterFactory, request.getEndpoint());
+        RateLimiter account = limiter(accounts, accountLimiterFactory, request.getAccount());
+        if(endpoint != null)
+            endpoint.acquire();
+        if(account != null)
+            account.acquire();
+
+        HttpResponse response = delegate.execute(request);
+        int status = response.getStatusCode();
+        if(status == HTTP_TOO_MANY_REQUESTS){
+            long retryAfter = parseRetryAfter(response.getHeader("Retry-After"));
+            if(endpoint != null)
+                endpoint.onThrottled(retryAfter);
+            if(account != null)
+                account.onThrottled(retryAfter);
+        }else if(status < 500){
+            if(endpoint != null)
+                endpoint.onSuccess();
+            if(account != null)
+                account.onSuccess();
+        }
+        return response;
+    }
+
+    /**
+     * 获得端点的当前限流速率.
+     *
+     * @param endpoint 端点名称
+     * @return 每秒请求数, 尚无该端点的限流器时返回 -1
+     */
+    public double getEndpointRate(String endpoint) {
+        RateLimiter limiter = endpoints.get(endpoint);
+        return limiter == null ? -1 : limiter.getRate();
+    }
+
+    private RateLimiter limiter(ConcurrentMap<String, RateLimiter> limiters, final Supplier<RateLimiter> factory, String key) {
+        if(factory == null || key == null)
+            return null;
+        RateLimiter limiter = limiters.get(key);
+        if(limiter != null)
+            return limiter;
+        if(limiters.size() >= PURGE_THRESHOLD){
+            long now = System.nanoTime();
+            long next = nextPurge.get();
+            if(now - next >= 0 && nextPurge.compareAndSet(next, now + PURGE_INTERVAL)){
+                purge(endpoints, now);
+                purge(accounts, now);
+            }
+        }
+        return limiters.computeIfAbsent(key, k -> factory.get());
+    }
+
+    private static void purge(ConcurrentMap<String, RateLimiter> limiters, long now) {
+        for(Iterator<RateLimiter> it = limiters.values().iterator(); it.hasNext();){
+            if(now - it.next().getLastUsed() > IDLE_TIMEOUT)
+                it.remove();
+        }
+    }
+
+    /**
+     * 解析Retry-After头.
+     *
+     * @param value 秒数或HTTP日期
+     * @return 需等待的毫秒数, 无法解析时返回 -1
+     */
+    public static long parseRetryAfter(String value) {
+        if(value == null || (value = value.trim()).isEmpty())
+            return -1;
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        } catch (NumberFormatException ex) {
+            // 可能是HTTP日期
+        }
+        try {
+            ZonedDateTime time = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, time.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException ex) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
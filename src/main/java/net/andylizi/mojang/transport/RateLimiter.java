@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自适应令牌桶限流器.
+ * <p>
+ * 请求成功时速率缓慢上升 (每秒约增加 <code>increment</code>),
+ * 被服务器限流时速率减半, 并在Retry-After指定的时间内暂停发放令牌.
+ * 速率始终处于 [minRate, maxRate] 之间.
+ *
+ * @author andylizi
+ */
+public class RateLimiter {
+    private final double minRate;
+    private final double maxRate;
+    private final double increment;
+    private final double burst;
+
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+    private long blockedUntil;
+    private volatile long lastUsed;
+
+    /**
+     * @param initialRate 初始速率 (每秒请求数)
+     * @param minRate 最低速率
+     * @param maxRate 最高速率
+     * @param burst 最多可累积的令牌数
+     */
+    public RateLimiter(double initialRate, double minRate, double maxRate, int burst) {
+        this(initialRate, minRate, maxRate, burst, 1.0);
+    }
+
+    /**
+     * @param initialRate 初始速率 (每秒请求数)
+     * @param minRate 最低速率
+     * @param maxRate 最高速率
+     * @param burst 最多可累积的令牌数
+     * @param increment 持续成功时每秒增加的速率
+     */
+    public RateLimiter(double initialRate, double minRate, double maxRate, int burst, double increment) {
+        if(!(minRate > 0 && minRate <= initialRate && initialRate <= maxRate))
+            throw new IllegalArgumentException("Require 0 < minRate <= initialRate <= maxRate");
+        if(burst <= 0)
+            throw new IllegalArgumentException("burst must be positive");
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.increment = increment;
+        this.burst = burst;
+        this.rate = initialRate;
+        this.tokens = burst;
+        this.lastRefill = this.lastUsed = System.nanoTime();
+    }
+
+    /**
+     * 获取一个令牌, 必要时阻塞.
+     *
+     * @throws InterruptedIOException 等待时被中断
+     */
+    public void acquire() throws InterruptedIOException{
+        long wait;
+        synchronized(this){
+            long now = System.nanoTime();
+            refill(now);
+            tokens -= 1;
+            wait = tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+            wait = Math.max(wait, blockedUntil - now);
+            lastUsed = now;
+        }
+        if(wait > 0){
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while rate limited");
+            }
+        }
+    }
+
+    /**
+     * 报告一次成功的请求, 速率将略微上升.
+     */
+    public synchronized void onSuccess(){
+        rate = Math.min(maxRate, rate + increment / rate);
+    }
+
+    /**
+     * 报告一次被服务器限流的请求 (HTTP 429), 速率将减半.
+     *
+     * @param retryAfter 服务器要求的等待时间 (毫秒), 未知时为负数
+     */
+    public synchronized void onThrottled(long retryAfter){
+        long now = System.nanoTime();
+        refill(now);
+        rate = Math.max(minRate, rate / 2);
+        tokens = Math.min(tokens, 0);
+        if(retryAfter > 0)
+            blockedUntil = Math.max(blockedUntil, now + TimeUnit.MILLISECONDS.toNanos(retryAfter));
+    }
+
+    /**
+     * @return 当前速率 (每秒请求数)
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * @return 最后一次获取令牌的时间 ({@link System#nanoTime()})
+     */
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1e9);
+        lastRefill = now;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("RateLimiter{rate=%.2f/s, tokens=%.2f}", rate, tokens);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * HTTP请求体.
+ *
+ * @author andylizi
+ */
+public abstract class RequestBody {
+
+    /**
+     * @return Content-Type
+     */
+    public abstract String getContentType();
+
+    /**
+     * 请求体的长度.
+     *
+     * @return 字节数, 未知时返回 -1
+     */
+    public abstract long getContentLength();
+
+    /**
+     * 将请求体写入输出流.
+     *
+     * @param out 输出流
+     * @throws IOException 发生 I/O 错误
+     */
+    public abstract void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * 从字节数组创建请求体.
+     *
+     * @param contentType Content-Type
+     * @param data 数据, 不会被复制
+     * @return 请求体
+     */
+    public static RequestBody create(final String contentType, final byte[] data){
+        Objects.requireNonNull(contentType);
+        Objects.requireNonNull(data);
+        return new RequestBody() {
+            @Override
+            public String getContentType() {
+                return contentType;
+            }
+
+            @Override
+            public long getContentLength() {
+                return data.length;
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(data);
+            }
+        };
+    }
+}
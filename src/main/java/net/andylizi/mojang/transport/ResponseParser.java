@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 增量式HTTP/1.1响应解析器.
+ * <p>
+ * 每次调用 {@link #parse(ByteBuffer)} 消耗缓冲区中属于当前响应的全部字节,
+ * 流水线中下一个响应的字节保留在缓冲区中. 一个解析器由一个连接重复使用.
+ *
+ * @author andylizi
+ */
+final class ResponseParser {
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final int MAX_HEADERS = 256;
+    /** 按Content-Length预先分配的最大空间, 更大的响应体在读取时扩容 */
+    private static final int MAX_PREALLOCATE = 64 * 1024;
+    /** 响应体的最大长度 */
+    static final int MAX_BODY_LENGTH = 16 * 1024 * 1024;
+
+    private static final int STATUS_LINE = 0;
+    private static final int HEADERS = 1;
+    private static final int BODY_FIXED = 2;
+    private static final int BODY_UNTIL_CLOSE = 3;
+    private static final int CHUNK_SIZE = 4;
+    private static final int CHUNK_DATA = 5;
+    private static final int CHUNK_DATA_END = 6;
+    private static final int TRAILERS = 7;
+    private static final int DONE = 8;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+
+    private int state;
+    private boolean bodyless;
+    private boolean http10;
+    private boolean closeDelimited;
+    private int statusCode;
+    private final List<String> headers = new ArrayList<>();
+    private byte[] body;
+    private int bodyLength;
+    private long remaining;
+
+    /**
+     * 开始解析一个新响应.
+     *
+     * @param bodyless 响应是否一定没有响应体, 例如HEAD请求
+     */
+    void reset(boolean bodyless) {
+        this.state = STATUS_LINE;
+        this.bodyless = bodyless;
+        this.http10 = false;
+        this.closeDelimited = false;
+        this.statusCode = -1;
+        this.headers.clear();
+        this.body = null;
+        this.bodyLength = 0;
+        this.remaining = 0;
+        this.lineLength = 0;
+    }
+
+    /**
+     * 从缓冲区中解析尽可能多的字节.
+     *
+     * @param in 处于读模式的缓冲区
+     * @return 响应是否已完整
+     * @throws IOException 响应格式错误
+     */
+    boolean parse(ByteBuffer in) throws IOException{
+        while(state != DONE && in.hasRemaining()){
+            switch(state){
+                case STATUS_LINE:
+                    if(readLine(in))
+                        parseStatusLine();
+                    break;
+                case HEADERS:
+                    if(readLine(in))
+                        parseHeaderLine();
+                    break;
+                case BODY_FIXED:
+                case CHUNK_DATA:
+                    readBody(in, (int) Math.min(remaining, in.remaining()));
+                    if(remaining == 0)
+                        state = state == BODY_FIXED ? DONE : CHUNK_DATA_END;
+                    break;
+                case BODY_UNTIL_CLOSE:
+                    readBody(in, in.remaining());
+                    break;
+                case CHUNK_SIZE:
+                    if(readLine(in))
+                        parseChunkSize();
+                    break;
+                case CHUNK_DATA_END:
+                    if(readLine(in)){
+                        if(lineLength != 0)
+                            throw new ProtocolException("Missing CRLF after chunk data");
+                        state = CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILERS:
+                    if(readLine(in)){
+                        if(lineLength == 0)
+                            state = DONE;
+                        lineLength = 0;
+                    }
+                    break;
+                default:
+                    throw new AssertionError(state);
+            }
+        }
+        return state == DONE;
+    }
+
+    /**
+     * 连接已被对方关闭.
+     *
+     * @return 以关闭连接作为结束的响应是否因此完整
+     */
+    boolean onEndOfStream() {
+        if(state == BODY_UNTIL_CLOSE)
+            state = DONE;
+        return state == DONE;
+    }
+
+    /**
+     * @return 是否已读到状态行
+     */
+    boolean isStarted() {
+        return state != STATUS_LINE || lineLength > 0;
+    }
+
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return 响应后连接是否可以继续使用
+     */
+    boolean isKeepAlive() {
+        if(closeDelimited)
+            return false;
+        String connection = getHeader("Connection");
+        if(connection != null && connection.equalsIgnoreCase("close"))
+            return false;
+        if(http10)
+            return connection != null && connection.equalsIgnoreCase("keep-alive");
+        return true;
+    }
+
+    /**
+     * @return 交替存放的响应头名称与值的副本
+     */
+    String[] getHeaders() {
+        return headers.toArray(new String[headers.size()]);
+    }
+
+    String getHeader(String name) {
+        for(int i = headers.size() - 2; i >= 0; i -= 2){
+            if(headers.get(i).equalsIgnoreCase(name))
+                return headers.get(i + 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return 响应体, 有效长度为 {@link #getBodyLength()}
+     */
+    byte[] getBody() {
+        return body;
+    }
+
+    int getBodyLength() {
+        return bodyLength;
+    }
+
+    private boolean readLine(ByteBuffer in) throws IOException{
+        while(in.hasRemaining()){
+            byte b = in.get();
+            if(b == '\n'){
+                if(lineLength > 0 && line[lineLength - 1] == '\r')
+                    lineLength--;
+                return true;
+            }
+            if(lineLength == line.length){
+                if(lineLength >= MAX_LINE_LENGTH)
+                    throw new ProtocolException("Response line too long");
+                line = Arrays.copyOf(line, lineLength * 2);
+            }
+            line[lineLength++] = b;
+        }
+        return false;
+    }
+
+    private String lineString(int start, int end) {
+        while(start < end && (line[start] == ' ' || line[start] == '\t'))
+            start++;
+        while(end > start && (line[end - 1] == ' ' || line[end - 1] == '\t'))
+            end--;
+        char[] chars = new char[end - start];
+        for(int i = 0; i < chars.length; i++)
+            chars[i] = (char) (line[start + i] & 0xFF);
+        return new String(chars);
+    }
+
+    private void parseStatusLine() throws IOException{
+        // HTTP/1.1 200 OK
+        if(lineLength < 12 || line[0] != 'H' || line[1] != 'T' || line[2] != 'T' || line[3] != 'P' || line[4] != '/'
+                || line[8] != ' ')
+            throw new ProtocolException("Malformed status line: " + lineString(0, lineLength));
+        int code = 0;
+        for(int i = 9; i < 12; i++){
+            int digit = line[i] - '0';
+            if(digit < 0 || digit > 9)
+                throw new ProtocolException("Malformed status line: " + lineString(0, lineLength));
+            code = code * 10 + digit;
+        }
+        http10 = line[5] == '1' && line[7] == '0';
+        statusCode = code;
+        lineLength = 0;
+        state = HEADERS;
+    }
+
+    private void parseHeaderLine() throws IOException{
+        if(lineLength == 0){
+            startBody();
+            return;
+        }
+        int colon = -1;
+        for(int i = 0; i < lineLength; i++){
+            if(line[i] == ':'){
+                colon = i;
+                break;
+            }
+        }
+        if(colon <= 0)
+            throw new ProtocolException("Malformed header: " + lineString(0, lineLength));
+        if(headers.size() >= MAX_HEADERS * 2)
+            throw new ProtocolException("Too many headers");
+        headers.add(lineString(0, colon));
+        headers.add(lineString(colon + 1, lineLength));
+        lineLength = 0;
+    }
+
+    private void startBody() throws IOException{
+        lineLength = 0;
+        if(statusCode / 100 == 1){
+            // 100 Continue等中间响应, 真正的响应紧随其后
+            headers.clear();
+            state = STATUS_LINE;
+            return;
+        }
+        if(bodyless || statusCode == 204 || statusCode == 304){
+            state = DONE;
+            return;
+        }
+        String transferEncoding = getHeader("Transfer-Encoding");
+        if(transferEncoding != null && !transferEncoding.equalsIgnoreCase("identity")){
+            state = CHUNK_SIZE;
+            body = new byte[256];
+            return;
+        }
+        String contentLength = getHeader("Content-Length");
+        if(contentLength == null){
+            state = BODY_UNTIL_CLOSE;
+            closeDelimited = true;
+            body = new byte[256];
+            return;
+        }
+        try {
+            remaining = Long.parseLong(contentLength);
+        } catch (NumberFormatException ex) {
+            throw new ProtocolException("Malformed Content-Length: " + contentLength);
+        }
+        if(remaining < 0)
+            throw new ProtocolException("Malformed Content-Length: " + contentLength);
+        if(remaining > MAX_BODY_LENGTH)
+            throw new ProtocolException("Response body too large: " + contentLength);
+        body = new byte[(int) Math.min(remaining, MAX_PREALLOCATE)];
+        state = remaining == 0 ? DONE : BODY_FIXED;
+    }
+
+    private void parseChunkSize() throws IOException{
+        long size = 0;
+        int digits = 0;
+        for(int i = 0; i < lineLength; i++){
+            int digit = Character.digit(line[i], 16);
+            if(digit < 0)
+                break;  // 忽略chunk扩展
+            if(++digits > 8)
+                throw new ProtocolException("Chunk too large");
+            size = size << 4 | digit;
+        }
+        if(digits == 0)
+            throw new ProtocolException("Malformed chunk size: " + lineString(0, lineLength));
+        lineLength = 0;
+        if(size == 0){
+            state = TRAILERS;
+        }else{
+            remaining = size;
+            state = CHUNK_DATA;
+        }
+    }
+
+    private void readBody(ByteBuffer in, int length) throws IOException{
+        if(bodyLength + length > body.length){
+            if((long) bodyLength + length > MAX_BODY_LENGTH)
+                throw new ProtocolException("Response body too large");
+            long capacity = Math.max((long) body.length * 2, (long) bodyLength + length);
+            body = Arrays.copyOf(body, (int) Math.min(capacity, MAX_BODY_LENGTH));
+        }
+        in.get(body, bodyLength, length);
+        bodyLength += length;
+        remaining -= length;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+import net.andylizi.mojang.metrics.RequestListener;
+import net.andylizi.mojang.metrics.RequestTrace;
+import net.andylizi.mojang.utils.IOUtils;
+import static net.andylizi.mojang.utils.Common.*;
+
+/**
+ * 基于 {@link HttpURLConnection} 的传输层.
+ * 每个请求使用一个新连接, 响应关闭后连接即被断开.
+ * 连接由 {@link net.andylizi.mojang.utils.Common#createHttpURLConnection(URL)} 创建.
+ *
+ * @author andylizi
+ * @see PooledHttpTransport
+ */
+public class UrlConnectionTransport implements HttpTransport{
+    private volatile int connectTimeout = -1;
+    private volatile int readTimeout = -1;
+
+    /**
+     * 设置连接超时. 为负数时使用Common中的默认值.
+     *
+     * @param connectTimeout 毫秒
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * @return 连接超时 (毫秒), 为负数时使用Common中的默认值
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * 设置读取超时. 为负数时使用Common中的默认值.
+     *
+     * @param readTimeout 毫秒
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        RequestListener listener = Common.getRequestListener();
+        RequestTrace trace = null;
+        if(listener != RequestListener.NOOP){
+            trace = new RequestTrace(request.getMethod(), request.getEndpoint());
+            listener.onRequestStart(trace);
+        }
+        HttpURLConnection conn = openConnection(request.getURL());
+        boolean success = false;
+        try {
+            send(conn, request, trace);
+            int status = conn.getResponseCode();
+            if(trace != null){
+                trace.endPhase(RequestTrace.Phase.WAIT);
+                trace.setStatusCode(status);
+            }
+            success = true;
+            return new UrlConnectionResponse(this, request, conn, listener, trace);
+        } catch (IOException | RuntimeException ex) {
+            if(trace != null){
+                trace.setError(ex.getClass().getSimpleName());
+                trace.finish(listener);
+            }
+            throw ex;
+        } finally {
+            if(!success)
+                conn.disconnect();
+        }
+    }
+
+    /**
+     * 打开连接.
+     *
+     * @param url URL
+     * @return 未连接的HttpURLConnection
+     * @throws IOException 发生 I/O 错误
+     */
+    protected HttpURLConnection openConnection(URL url) throws IOException{
+        HttpURLConnection conn = Common.createHttpURLConnection(url);
+        if(connectTimeout >= 0)
+            conn.setConnectTimeout(connectTimeout);
+        if(readTimeout >= 0)
+            conn.setReadTimeout(readTimeout);
+        return conn;
+    }
+
+    /**
+     * 发送请求头与请求体.
+     *
+     * @param conn 连接
+     * @param request 请求
+     * @param trace 请求记录, 可以为null
+     * @throws IOException 发生 I/O 错误
+     */
+    protected void send(HttpURLConnection conn, HttpRequest request, RequestTrace trace) throws IOException{
+        conn.setDoInput(true);
+        conn.setRequestMethod(request.getMethod());
+        for(Map.Entry<String, String> header : request.getHeaders().entrySet())
+            conn.setRequestProperty(header.getKey(), header.getValue());
+
+        RequestBody body = request.getBody();
+        if(body != null){
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", body.getContentType());
+            long length = body.getContentLength();
+            if(length >= 0)
+                conn.setFixedLengthStreamingMode(length);
+        }
+        conn.connect();
+        if(trace != null)
+            trace.endPhase(RequestTrace.Phase.CONNECT);
+        if(body == null)
+            return;
+        try (OutputStream out = trace == null ? conn.getOutputStream() : trace.countSent(conn.getOutputStream())) {
+            body.writeTo(out);
+        }
+        if(trace != null)
+            trace.endPhase(RequestTrace.Phase.SEND);
+    }
+
+    /**
+     * 释放响应所占用的连接.
+     *
+     * @param request 请求
+     * @param conn 连接
+     * @param body 已打开的响应体, 可能为null
+     * @throws IOException 发生 I/O 错误
+     */
+    protected void release(HttpRequest request, HttpURLConnection conn, InputStream body) throws IOException{
+        try {
+            if(body != null)
+                body.close();
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {}
+
+    static class UrlConnectionResponse extends HttpResponse{
+        private final UrlConnectionTransport transport;
+        private final HttpRequest request;
+        private final HttpURLConnection conn;
+        private final RequestListener listener;
+        private final RequestTrace trace;
+        private InputStream body;
+        private boolean closed;
+
+        UrlConnectionResponse(UrlConnectionTransport transport, HttpRequest request, HttpURLConnection conn,
+                RequestListener listener, RequestTrace trace) {
+            this.transport = transport;
+            this.request = request;
+            this.conn = conn;
+            this.listener = listener;
+            this.trace = trace;
+        }
+
+        @Override
+        public int getStatusCode() {
+            try {
+                return conn.getResponseCode();
+            } catch (IOException ex) {
+                throw new AssertionError("response code has already been read", ex);
+            }
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return conn.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if(closed)
+                throw new IOException("Response closed");
+            if(body == null)
+                body = IOUtils.handleInputStream(conn, trace);
+            return body;
+        }
+
+        @Override
+        public RequestTrace getTrace() {
+            return trace;
+        }
+
+        HttpURLConnection getConnection() {
+            return conn;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(closed)
+                return;
+            closed = true;
+            try {
+                transport.release(request, conn, body);
+            } finally {
+                if(trace != null){
+                    trace.endPhase(RequestTrace.Phase.RECEIVE);
+                    trace.finish(listener);
+                }
+            }
+        }
+    }
+}
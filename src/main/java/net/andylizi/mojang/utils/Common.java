@@ -17,13 +17,36 @@
  */
 package net.andylizi.mojang.utils;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.CharBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import net.andylizi.mojang.exception.MojangException;
+import net.andylizi.mojang.metrics.RequestListener;
+import net.andylizi.mojang.metrics.RequestTrace;
 import net.andylizi.mojang.exception.NotSecuredException;
+import net.andylizi.mojang.exception.TooManyRequestsException;
 import net.andylizi.mojang.exception.UnauthorizedException;
+import net.andylizi.mojang.transport.CircuitBreakerTransport;
+import net.andylizi.mojang.transport.HttpResponse;
+import net.andylizi.mojang.transport.HttpTransport;
+import net.andylizi.mojang.transport.PooledHttpTransport;
+import net.andylizi.mojang.transport.RateLimitedTransport;
 
 /**
  * 通用. 
@@ -37,6 +60,157 @@ public class Common {
      */
     public static Common Common = new Common();
     
+    /**
+     * 默认的API地址
+     */
+    public static final String DEFAULT_API_BASE = "https://api.mojang.com";
+    
+    private volatile String apiBase = DEFAULT_API_BASE;
+    
+    /**
+     * 获得当前使用的API地址. 
+     * 
+     * @return API地址, 不以'/'结尾
+     */
+    public String getApiBase() {
+        return apiBase;
+    }
+    
+    /**
+     * 设置API地址, 例如用于连接本地的测试服务器. 
+     * 
+     * @param apiBase API地址, 例如<code>http://127.0.0.1:8080</code>
+     * @throws IllegalArgumentException 地址格式错误
+     * @see #DEFAULT_API_BASE
+     */
+    public void setApiBase(String apiBase) throws IllegalArgumentException{
+        Objects.requireNonNull(apiBase);
+        while(apiBase.endsWith("/"))
+            apiBase = apiBase.substring(0, apiBase.length() - 1);
+        try {
+            new URL(apiBase);
+        } catch (MalformedURLException ex) {
+            throw new IllegalArgumentException("Invalid API base: " + apiBase, ex);
+        }
+        this.apiBase = apiBase;
+    }
+    
+    /**
+     * 根据当前的API地址创建URL. 
+     * 
+     * @param path 以'/'开头的路径
+     * @return URL
+     * @throws MalformedURLException 路径格式错误
+     */
+    public URL createApiURL(String path) throws MalformedURLException{
+        return new URL(apiBase.concat(path));
+    }
+    
+    private volatile HttpTransport transport = new CircuitBreakerTransport(new PooledHttpTransport());
+    
+    /**
+     * 获得当前使用的HTTP传输层. 
+     * 
+     * @return 传输层
+     */
+    public HttpTransport getTransport() {
+        return transport;
+    }
+    
+    /**
+     * 设置HTTP传输层. 
+     * 默认为按端点断路 ({@link CircuitBreakerTransport}) 的 {@link PooledHttpTransport}, 不限流. 
+     * 需要按端点和账户限流时可自行包装, 例如 
+     * <code>new CircuitBreakerTransport(new RateLimitedTransport(new PooledHttpTransport()))</code>; 
+     * 如需每次请求都使用新连接可设置为 {@link net.andylizi.mojang.transport.UrlConnectionTransport}. 
+     * 
+     * @param transport 传输层
+     */
+    public void setTransport(HttpTransport transport) {
+        this.transport = Objects.requireNonNull(transport);
+    }
+    
+    private volatile RequestListener requestListener = RequestListener.NOOP;
+    
+    /**
+     * 获得当前的请求监听器. 
+     * 
+     * @return 监听器, 未设置时为 {@link RequestListener#NOOP}
+     */
+    public RequestListener getRequestListener() {
+        return requestListener;
+    }
+    
+    /**
+     * 设置请求监听器, 所有经过传输层的请求都会通知它. 
+     * 多个监听器可用 {@link RequestListener#of(RequestListener...)} 组合. 
+     * 
+     * @param listener 监听器, 为null时不监听
+     * @see net.andylizi.mojang.metrics.MetricsRegistry
+     */
+    public void setRequestListener(RequestListener listener) {
+        this.requestListener = listener == null ? RequestListener.NOOP : listener;
+    }
+    
+    private volatile Executor executor = createDefaultExecutor();
+    
+    /**
+     * 获得执行异步请求的Executor. 
+     * 
+     * @return Executor
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+    
+    /**
+     * 设置执行异步请求的Executor. 
+     * 默认在支持虚拟线程的JVM上为每个任务使用一个虚拟线程, 否则使用守护线程组成的缓存线程池. 
+     * 
+     * @param executor Executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+    }
+    
+    /**
+     * 在 {@link #getExecutor()} 上异步执行任务. 
+     * 任务抛出的异常将原样作为返回的Future的异常结果. 
+     * 
+     * @param <T> 结果类型
+     * @param task 任务
+     * @return 任务的结果
+     */
+    public <T> CompletableFuture<T> async(final Callable<T> task){
+        Objects.requireNonNull(task);
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            if(future.isDone())
+                return;
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+    
+    private static Executor createDefaultExecutor(){
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // 不支持虚拟线程
+        }
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "MojangAPI-async-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
     /**
      * 抛出Mojang异常. 
      * 
@@ -46,19 +220,127 @@ public class Common {
      * @throws MojangException 异常
      */
     public void throwMojangException(String json) throws UnauthorizedException, NotSecuredException, MojangException{
-        if(!json.contains("\"error\":\""))
-            return;
-        
-        if(json.contains("\"Current IP not secured\""))
-            throw new NotSecuredException();
-        else if(json.contains("\"The request requires user authentication\""))
-            throw new UnauthorizedException();
-        else
-            try {
-                throw MojangException.ADAPTER.fromJson(json);
-            } catch (IOException ex) {
-                throw new MojangException("FormatFailed", json);
+        throwMojangException((CharSequence) json);
+    }
+    
+    /**
+     * 抛出Mojang异常. 
+     * 与 {@link #throwMojangException(String)} 相同, 但不要求先将响应体复制为String. 
+     * 
+     * @param json Mojang服务器返回的JSON. 如果其不包含error, 此方法将什么也不会做
+     * @throws net.andylizi.mojang.exception.UnauthorizedException 异常
+     * @throws NotSecuredException 异常
+     * @throws MojangException 异常
+     * @see IOUtils#readText(HttpResponse)
+     */
+    public void throwMojangException(CharSequence json) throws UnauthorizedException, NotSecuredException, MojangException{
+        throwMojangException(new JsonReader(IOUtils.reader(json)), json);
+    }
+    
+    /**
+     * 从JsonReader中单次流式读取错误信息并抛出对应的Mojang异常. 
+     * 
+     * @param reader 位于响应开头的JsonReader
+     * @param json 响应体, 仅在格式错误时用于构造异常
+     */
+    private void throwMojangException(JsonReader reader, CharSequence json) throws MojangException{
+        String error = null;
+        String message = null;
+        try {
+            if(reader.peek() != JsonToken.BEGIN_OBJECT)
+                return;
+            reader.beginObject();
+            while(reader.hasNext()){
+                switch(reader.nextName()){
+                    case "error":
+                        error = reader.nextString();
+                        break;
+                    case "errorMessage":
+                        message = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
             }
+        } catch (IOException | IllegalStateException ex) {
+            if(error != null)
+                throw new MojangException("FormatFailed", json.toString());
+        }
+        if(error != null)
+            throw createMojangException(error, message);
+    }
+    
+    /**
+     * 根据Mojang服务器返回的错误创建对应的异常. 
+     * 子类可重写该方法映射更多的错误类型. 
+     * 
+     * @param error 错误类型, 即响应中的<code>error</code>
+     * @param message 错误描述, 即响应中的<code>errorMessage</code>, 可能为null
+     * @return 异常
+     */
+    public MojangException createMojangException(String error, String message){
+        if("Current IP not secured".equals(message))
+            return new NotSecuredException();
+        else if("The request requires user authentication".equals(message))
+            return new UnauthorizedException();
+        else if("TooManyRequestsException".equals(error))
+            return new TooManyRequestsException(-1);
+        else
+            return new MojangException(error, message == null ? "undefine" : message);
+    }
+    
+    /**
+     * 读取响应, 出错时抛出Mojang异常. 
+     * 响应体只经过一个 {@link JsonReader} 单次流式读取: 状态码表示成功时直接交给decoder解码, 
+     * 否则从同一个JsonReader中读取<code>error</code>与<code>errorMessage</code>, 不会产生中间String. 
+     * 
+     * @param <T> 结果类型
+     * @param response 响应
+     * @param decoder 成功时的解码器, 为null时只检查错误
+     * @return 解码结果. 响应体为空, decoder为null, 或失败的响应中不包含error时返回null
+     * @throws IOException 发生 I/O 错误或JSON格式错误
+     * @throws TooManyRequestsException 请求过于频繁
+     * @throws MojangException Mojang服务器返回异常
+     */
+    public <T> T readMojangResponse(HttpResponse response, TypeAdapter<T> decoder) throws IOException, MojangException{
+        int status = response.getStatusCode();
+        if(status == RateLimitedTransport.HTTP_TOO_MANY_REQUESTS){
+            TooManyRequestsException ex = new TooManyRequestsException(RateLimitedTransport.parseRetryAfter(response.getHeader("Retry-After")));
+            RequestTrace trace = response.getTrace();
+            if(trace != null)
+                trace.setError(ex.getError());
+            throw ex;
+        }
+        CharBuffer body = IOUtils.readText(response);
+        if(!body.hasRemaining())
+            return null;
+        JsonReader reader = new JsonReader(IOUtils.reader(body));
+        if(decoder != null && status < HttpURLConnection.HTTP_MULT_CHOICE)
+            return decoder.read(reader);
+        try {
+            throwMojangException(reader, body);
+        } catch (MojangException ex) {
+            RequestTrace trace = response.getTrace();
+            if(trace != null)
+                trace.setError(ex.getError());
+            throw ex;
+        }
+        return null;
+    }
+    
+    /**
+     * 根据响应抛出Mojang异常. 
+     * 与 {@link #throwMojangException(CharSequence)} 相同, 但会额外处理<code>429 Too Many Requests</code>. 
+     * 
+     * @param response 响应
+     * @param json 响应体
+     * @throws TooManyRequestsException 请求过于频繁
+     * @throws MojangException 异常
+     */
+    public void throwMojangException(HttpResponse response, CharSequence json) throws TooManyRequestsException, MojangException{
+        if(response.getStatusCode() == RateLimitedTransport.HTTP_TOO_MANY_REQUESTS)
+            throw new TooManyRequestsException(RateLimitedTransport.parseRetryAfter(response.getHeader("Retry-After")));
+        throwMojangException(json);
     }
     
     /**
@@ -87,4 +369,27 @@ public class Common {
     public String createBoundary(){
         return "----".concat(Long.toString(new Random().nextLong(), 16));
     }
+
+    /**
+     * 创建AccessToken对应的账户标识, 用于 {@link net.andylizi.mojang.transport.HttpRequest#account(String)}.
+     * 标识为AccessToken的SHA-256摘要的前128位, 限流器等长期保存的键中不会出现明文AccessToken.
+     *
+     * @param accessToken AccessToken
+     * @return 32位十六进制字符串
+     */
+    public String createAccountKey(String accessToken){
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new AssertionError("SHA-256 is required on every Java platform", ex);
+        }
+        byte[] hash = digest.digest(accessToken.getBytes(UTF_8));
+        char[] chars = new char[32];
+        for(int i = 0; i < 16; i++){
+            chars[i * 2] = Character.forDigit((hash[i] >> 4) & 0xF, 16);
+            chars[i * 2 + 1] = Character.forDigit(hash[i] & 0xF, 16);
+        }
+        return new String(chars);
+    }
 }
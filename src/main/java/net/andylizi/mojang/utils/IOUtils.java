@@ -18,12 +18,23 @@
 package net.andylizi.mojang.utils;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.CharArrayReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
 import java.util.Objects;
-import java.util.zip.GZIPInputStream;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import net.andylizi.mojang.metrics.RequestTrace;
+import net.andylizi.mojang.transport.HttpResponse;
 
 /**
  *
@@ -39,18 +50,85 @@ public abstract class IOUtils {
      * @throws IOException 发送 I / O 错误
      */
     public static InputStream handleInputStream(HttpURLConnection conn) throws IOException{
+        return handleInputStream(conn, null);
+    }
+    
+    /**
+     * 获得HttpURLConnection中的输入流, 并在请求记录中统计压缩前后的字节数.
+     * 
+     * @param conn 一个<b>打开的</b>HttpURLConnection对象
+     * @param trace 请求记录, 可以为null
+     * @return 输入流
+     * @throws IOException 发送 I / O 错误
+     */
+    public static InputStream handleInputStream(HttpURLConnection conn, RequestTrace trace) throws IOException{
         InputStream in;
         if(conn.getResponseCode() != HttpURLConnection.HTTP_OK)
             in = conn.getErrorStream() == null ? conn.getInputStream() : conn.getErrorStream();
         else
             in = conn.getInputStream();
-        if(conn.getContentEncoding() != null && conn.getContentEncoding().toLowerCase().contains("gzip"))
-            in = new GZIPInputStream(in);
-        else
+        String encoding = conn.getContentEncoding();
+        if(!isGzip(encoding))
             in = new BufferedInputStream(in);
+        return handleInputStream(in, encoding, trace);
+    }
+    
+    /**
+     * 按Content-Encoding解码原始的响应体, 并在请求记录中统计压缩前后的字节数.
+     * 
+     * @param in 原始的响应体
+     * @param contentEncoding Content-Encoding, 可以为null
+     * @param trace 请求记录, 可以为null
+     * @return 输入流
+     * @throws IOException 发送 I / O 错误
+     */
+    public static InputStream handleInputStream(InputStream in, String contentEncoding, RequestTrace trace) throws IOException{
+        if(trace != null)
+            in = trace.countReceived(in);
+        if(isGzip(contentEncoding))
+            in = new PooledGzipInputStream(in, trace);
+        if(trace != null)
+            in = trace.countDecoded(in);
         return in;
     }
     
+    /**
+     * 按Content-Encoding解码已完整读入内存的响应体, 不复制内容.
+     * 
+     * @param body 原始的响应体
+     * @param off 起始位置
+     * @param len 长度
+     * @param contentEncoding Content-Encoding, 可以为null
+     * @param trace 请求记录, 可以为null
+     * @return 输入流
+     * @throws IOException gzip格式错误
+     */
+    public static InputStream handleInputStream(byte[] body, int off, int len, String contentEncoding, RequestTrace trace) throws IOException{
+        InputStream in;
+        if(trace != null)
+            trace.addBytesReceived(len);
+        if(isGzip(contentEncoding))
+            in = new PooledGzipInputStream(body, off, len, trace);
+        else
+            in = new ByteArrayInputStream(body, off, len);
+        if(trace != null)
+            in = trace.countDecoded(in);
+        return in;
+    }
+    
+    /**
+     * 不区分大小写地检查Content-Encoding中是否含有gzip, 避免 {@link String#toLowerCase()} 的分配. 
+     */
+    private static boolean isGzip(String contentEncoding) {
+        if(contentEncoding == null)
+            return false;
+        for(int i = contentEncoding.length() - 4; i >= 0; i--){
+            if(contentEncoding.regionMatches(true, i, "gzip", 0, 4))
+                return true;
+        }
+        return false;
+    }
+    
     /**
      * 读取输入流中所有内容并转换为字节数组
      * @param in 输入流
@@ -59,12 +137,116 @@ public abstract class IOUtils {
      */
     public static byte[] readFully(InputStream in) throws IOException{
         Objects.requireNonNull(in);
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            byte[] buf = new byte[64];
-            int len = -1;
-            while((len = in.read(buf)) != -1)
-                baos.write(buf, 0, len);
-            return baos.toByteArray();
+        ByteBuffer buf = read(in, -1);
+        return Arrays.copyOf(buf.array(), buf.limit());
+    }
+    
+    /**
+     * 读取响应体中的所有内容. 
+     * 按Content-Length预先分配空间 (最多 {@link Buffers#RETAIN_LIMIT}, 更长的内容在读取时扩容), 
+     * 内容存放在当前线程的缓冲区中. 
+     * 
+     * @param response 响应
+     * @return 响应体内容, <b>仅在当前线程下一次调用本类的读取方法前有效</b>
+     * @throws IOException 发生 I/O 错误
+     */
+    public static ByteBuffer readBody(HttpResponse response) throws IOException{
+        return read(response.getBody(), response.getContentLength());
+    }
+    
+    /**
+     * 读取响应体中的所有内容并按UTF-8解码. 
+     * 
+     * @param response 响应
+     * @return 响应体内容, <b>仅在当前线程下一次调用本类的读取方法前有效</b>
+     * @throws IOException 发生 I/O 错误
+     */
+    public static CharBuffer readText(HttpResponse response) throws IOException{
+        return decode(readBody(response));
+    }
+    
+    /**
+     * 将UTF-8字节解码为字符. 
+     * 
+     * @param bytes 字节
+     * @return 解码结果, <b>仅在当前线程下一次调用本类的读取方法前有效</b>
+     */
+    public static CharBuffer decode(ByteBuffer bytes){
+        Buffers buffers = BUFFERS.get();
+        CharBuffer out = CharBuffer.wrap(buffers.chars(bytes.remaining()));
+        buffers.decoder.reset();
+        buffers.decoder.decode(bytes.duplicate(), out, true);
+        buffers.decoder.flush(out);
+        out.flip();
+        return out;
+    }
+    
+    /**
+     * 获得字符序列的Reader视图, 不复制内容. 
+     * 
+     * @param text 字符序列
+     * @return Reader
+     */
+    public static Reader reader(CharSequence text){
+        if(text instanceof CharBuffer && ((CharBuffer) text).hasArray()){
+            CharBuffer buf = (CharBuffer) text;
+            return new CharArrayReader(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+        }
+        return new StringReader(text.toString());
+    }
+    
+    private static ByteBuffer read(InputStream in, long sizeHint) throws IOException{
+        Buffers buffers = BUFFERS.get();
+        // Content-Length不可信, 不按其分配超过保留上限的空间
+        byte[] buf = buffers.bytes(sizeHint > 0 ? (int) Math.min(sizeHint + 1, Buffers.RETAIN_LIMIT) : 0);
+        int size = 0;
+        int len;
+        while((len = in.read(buf, size, buf.length - size)) != -1){
+            size += len;
+            if(size == buf.length)
+                buf = buffers.grow();
+        }
+        return ByteBuffer.wrap(buf, 0, size);
+    }
+    
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>(){
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+    
+    /**
+     * 每个线程的读取缓冲区. 超过 {@link #RETAIN_LIMIT} 的缓冲区用完即弃. 
+     */
+    private static final class Buffers {
+        private static final int INITIAL_SIZE = 1024;
+        private static final int RETAIN_LIMIT = 256 * 1024;
+        
+        final CharsetDecoder decoder = UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private byte[] bytes = new byte[INITIAL_SIZE];
+        private char[] chars = new char[INITIAL_SIZE];
+        
+        byte[] bytes(int minSize) {
+            if(bytes.length > RETAIN_LIMIT)
+                bytes = new byte[INITIAL_SIZE];
+            if(bytes.length < minSize)
+                bytes = new byte[minSize];
+            return bytes;
+        }
+        
+        byte[] grow() {
+            return bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        
+        char[] chars(int minSize) {
+            if(chars.length > RETAIN_LIMIT)
+                chars = new char[INITIAL_SIZE];
+            if(chars.length < minSize)
+                chars = new char[minSize];
+            return chars;
         }
     }
     
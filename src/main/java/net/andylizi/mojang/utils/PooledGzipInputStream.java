@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import net.andylizi.mojang.metrics.RequestTrace;
+
+/**
+ * 复用 {@link Inflater} 与输入缓冲区的gzip解码流.
+ * <p>
+ * 与 {@link java.util.zip.GZIPInputStream} 不同, 每个流不再各自分配 <code>Inflater</code> 的本地内存,
+ * 而是在读到末尾或关闭时将其归还到全局的池中. 解压结果直接写入调用者的缓冲区, 没有中间复制.
+ * 支持多个gzip成员首尾相连的响应体. 请求记录不为null时统计解压所用的时间.
+ *
+ * @author andylizi
+ * @see IOUtils#handleInputStream(InputStream, String, RequestTrace)
+ */
+final class PooledGzipInputStream extends InputStream {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int POOL_SIZE = Math.min(64, Runtime.getRuntime().availableProcessors() * 4);
+    private static final BlockingQueue<Decoder> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final InputStream in;
+    private final RequestTrace trace;
+    private Decoder decoder;
+    private byte[] buf;
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private boolean closed;
+    private byte[] single;
+
+    /**
+     * @param in 压缩的输入流
+     * @param trace 请求记录, 可以为null
+     * @throws IOException gzip头格式错误或发生 I/O 错误
+     */
+    PooledGzipInputStream(InputStream in, RequestTrace trace) throws IOException {
+        this.in = in;
+        this.trace = trace;
+        this.decoder = acquire();
+        this.buf = decoder.buffer;
+        init();
+    }
+
+    /**
+     * 直接解码内存中的响应体, 不复制.
+     *
+     * @param bytes 压缩的响应体
+     * @param off 起始位置
+     * @param len 长度
+     * @param trace 请求记录, 可以为null
+     * @throws IOException gzip头格式错误
+     */
+    PooledGzipInputStream(byte[] bytes, int off, int len, RequestTrace trace) throws IOException {
+        this.in = null;
+        this.trace = trace;
+        this.decoder = acquire();
+        this.buf = bytes;
+        this.pos = off;
+        this.limit = off + len;
+        init();
+    }
+
+    private void init() throws IOException {
+        try {
+            readHeader();
+        } catch (IOException | RuntimeException ex) {
+            release();
+            throw ex;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(single == null)
+            single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(closed)
+            throw new IOException("Stream closed");
+        if((off | len | (off + len) | (b.length - (off + len))) < 0)
+            throw new IndexOutOfBoundsException();
+        if(len == 0)
+            return 0;
+        if(eof)
+            return -1;
+        if(decoder == null)
+            throw new IOException("Stream corrupted");
+        try {
+            int n = inflate(b, off, len);
+            if(n == -1){
+                eof = true;
+                release();
+            }
+            return n;
+        } catch (IOException | RuntimeException ex) {
+            release();
+            throw ex;
+        }
+    }
+
+    private int inflate(byte[] b, int off, int len) throws IOException {
+        Inflater inflater = decoder.inflater;
+        while(true){
+            int n;
+            try {
+                if(trace == null){
+                    n = inflater.inflate(b, off, len);
+                }else{
+                    long start = System.nanoTime();
+                    n = inflater.inflate(b, off, len);
+                    trace.addDecompressTime(System.nanoTime() - start);
+                }
+            } catch (DataFormatException ex) {
+                String message = ex.getMessage();
+                throw new ZipException(message == null ? "Invalid ZLIB data format" : message);
+            }
+            if(n > 0){
+                decoder.crc.update(b, off, n);
+                return n;
+            }
+            if(inflater.finished()){
+                pos = limit - inflater.getRemaining();
+                readTrailer();
+                if(!nextMember())
+                    return -1;
+            }else if(inflater.needsDictionary()){
+                throw new ZipException("Unexpected preset dictionary");
+            }else if(inflater.needsInput()){
+                if(fill() == -1)
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                inflater.setInput(buf, pos, limit - pos);
+            }
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        if(closed)
+            throw new IOException("Stream closed");
+        return eof ? 0 : 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed)
+            return;
+        closed = true;
+        release();
+        if(in != null)
+            in.close();
+    }
+
+    private void readHeader() throws IOException {
+        if(readUByte() != 0x1F || readUByte() != 0x8B)
+            throw new ZipException("Not in GZIP format");
+        if(readUByte() != 8)
+            throw new ZipException("Unsupported compression method");
+        int flags = readUByte();
+        skip(6);  // MTIME, XFL, OS
+        if((flags & FEXTRA) != 0)
+            skip(readUByte() | readUByte() << 8);
+        if((flags & FNAME) != 0)
+            while(readUByte() != 0);
+        if((flags & FCOMMENT) != 0)
+            while(readUByte() != 0);
+        if((flags & FHCRC) != 0)
+            skip(2);
+        decoder.inflater.setInput(buf, pos, limit - pos);
+    }
+
+    private void readTrailer() throws IOException {
+        long crc = readUInt();
+        long size = readUInt();
+        if(crc != decoder.crc.getValue())
+            throw new ZipException("Corrupt GZIP trailer");
+        if(size != (decoder.inflater.getBytesWritten() & 0xFFFFFFFFL))
+            throw new ZipException("Corrupt GZIP trailer");
+    }
+
+    /**
+     * 检查之后是否还有下一个gzip成员. 与 {@link java.util.zip.GZIPInputStream} 相同, 忽略末尾的其他数据.
+     */
+    private boolean nextMember() throws IOException {
+        if(pos == limit && fill() == -1)
+            return false;
+        if((buf[pos] & 0xFF) != 0x1F)
+            return false;
+        decoder.inflater.reset();
+        decoder.crc.reset();
+        readHeader();
+        return true;
+    }
+
+    private int fill() throws IOException {
+        if(in == null)
+            return -1;
+        int n = in.read(buf, 0, buf.length);
+        if(n > 0){
+            pos = 0;
+            limit = n;
+        }
+        return n;
+    }
+
+    private int readUByte() throws IOException {
+        while(pos == limit){
+            if(fill() == -1)
+                throw new EOFException();
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    private long readUInt() throws IOException {
+        long b0 = readUByte();
+        long b1 = readUByte();
+        long b2 = readUByte();
+        long b3 = readUByte();
+        return b0 | b1 << 8 | b2 << 16 | b3 << 24;
+    }
+
+    private void skip(int n) throws IOException {
+        while(n-- > 0)
+            readUByte();
+    }
+
+    private void release() {
+        Decoder decoder = this.decoder;
+        if(decoder == null)
+            return;
+        this.decoder = null;
+        if(buf == decoder.buffer)
+            buf = null;
+        decoder.inflater.reset();
+        decoder.crc.reset();
+        if(!POOL.offer(decoder))
+            decoder.inflater.end();
+    }
+
+    private static Decoder acquire() {
+        Decoder decoder = POOL.poll();
+        return decoder == null ? new Decoder() : decoder;
+    }
+
+    /**
+     * 池中的一组可复用的解码状态.
+     */
+    private static final class Decoder {
+        final Inflater inflater = new Inflater(true);
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+    }
+}
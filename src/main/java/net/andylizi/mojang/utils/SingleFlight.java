@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.UnaryOperator;
+
+import net.andylizi.mojang.api.MojangResult;
+import net.andylizi.mojang.exception.MojangException;
+import net.andylizi.mojang.exception.NotSecuredException;
+import net.andylizi.mojang.exception.TooManyRequestsException;
+import net.andylizi.mojang.exception.UnauthorizedException;
+import net.andylizi.mojang.transport.CircuitOpenException;
+
+/**
+ * 合并相同的并发调用.
+ * <p>
+ * 同一个键同时只有一个调用在执行, 期间以相同的键发起的调用不再执行,
+ * 而是等待并共享其结果. 调用失败时每个等待者得到各自的异常, 类型与调用抛出的相同, 原因为原异常;
+ * {@link RuntimeException} 包装为 {@link CompletionException}.
+ * 执行调用的线程被中断时, 等待者不会共享该中断, 而是重新发起调用.
+ * 调用完成后键即被释放, 结果不会被缓存.
+ *
+ * @author andylizi
+ * @param <K> 键的类型
+ */
+public class SingleFlight<K> {
+    private final ConcurrentMap<K, Flight> flights = new ConcurrentHashMap<>();
+
+    /**
+     * 执行调用, 或等待以相同的键正在执行的调用.
+     *
+     * @param <T> 结果类型
+     * @param key 键
+     * @param call 调用
+     * @param copier 为每个调用者复制一份结果, 使可变的结果不被共享; 结果不可变时为null
+     * @return 结果
+     * @throws IOException 调用抛出的异常, 或等待时被中断 ({@link InterruptedIOException})
+     * @throws MojangException 调用抛出的异常
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(K key, MojangResult.Call<T> call, UnaryOperator<T> copier) throws IOException, MojangException{
+        Objects.requireNonNull(key);
+        Flight flight = new Flight();
+        Flight existing;
+        while((existing = flights.putIfAbsent(key, flight)) != null){
+            if(existing.await()){
+                T value = (T) existing.value;
+                return copier == null || value == null ? value : copier.apply(value);
+            }
+            // 执行调用的线程被中断, 由当前线程重新发起
+        }
+
+        try {
+            flight.value = call.call();
+        } catch (IOException | MojangException | RuntimeException | Error ex) {
+            flight.error = ex;
+            throw ex;
+        } finally {
+            flights.remove(key, flight);
+            flight.done.countDown();
+        }
+        // 原结果可能正被等待者复制, 当前调用者同样只拿到副本
+        T value = (T) flight.value;
+        return copier == null || value == null ? value : copier.apply(value);
+    }
+
+    /**
+     * @return 正在执行的调用数
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    private static final class Flight {
+        final CountDownLatch done = new CountDownLatch(1);
+        Object value;
+        Throwable error;
+
+        /**
+         * @return 调用是否完成, 执行调用的线程被中断时为false
+         */
+        boolean await() throws IOException, MojangException{
+            try {
+                done.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for coalesced call");
+            }
+            Throwable error = this.error;
+            if(error == null)
+                return true;
+            if(isInterrupt(error))
+                return false;
+            if(error instanceof IOException)
+                throw copy((IOException) error);
+            if(error instanceof MojangException)
+                throw copy((MojangException) error);
+            if(error instanceof RuntimeException)
+                throw new CompletionException(error);
+            throw (Error) error;
+        }
+
+        private static boolean isInterrupt(Throwable error) {
+            return (error instanceof InterruptedIOException && !(error instanceof SocketTimeoutException))
+                    || error instanceof ClosedByInterruptException;
+        }
+
+        /**
+         * 复制IOException, 保留其类型. 原因为Mojang异常时 (例如请求过于频繁), 副本的原因为该异常的副本,
+         * 否则为原异常. 无法复制时返回原异常.
+         */
+        private static IOException copy(IOException error) {
+            IOException copy;
+            if(error instanceof CircuitOpenException){
+                CircuitOpenException open = (CircuitOpenException) error;
+                copy = new CircuitOpenException(open.getEndpoint(), open.getRetryAfter());
+            }else{
+                try {
+                    copy = error.getClass().getConstructor(String.class).newInstance(error.getMessage());
+                } catch (ReflectiveOperationException | RuntimeException ex) {
+                    return error;
+                }
+            }
+            Throwable cause = error.getCause();
+            try {
+                copy.initCause(cause instanceof MojangException ? copy((MojangException) cause) : error);
+            } catch (IllegalStateException ex) {
+                return error;  // 构造器已设置了原因
+            }
+            return copy;
+        }
+
+        private static MojangException copy(MojangException error) {
+            MojangException copy;
+            if(error instanceof UnauthorizedException)
+                copy = new UnauthorizedException();
+            else if(error instanceof NotSecuredException)
+                copy = new NotSecuredException();
+            else if(error instanceof TooManyRequestsException)
+                copy = new TooManyRequestsException(((TooManyRequestsException) error).getRetryAfter());
+            else if(error.getClass() == MojangException.class)
+                copy = new MojangException(error.getError(), error.getErrorMessage());
+            else
+                return error;  // 未知的子类无法复制
+            copy.initCause(error);
+            return copy;
+        }
+    }
+}
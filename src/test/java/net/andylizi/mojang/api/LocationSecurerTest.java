@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.andylizi.mojang.exception.MojangException;
+import net.andylizi.mojang.exception.UnauthorizedException;
+import net.andylizi.mojang.test.FakeMojangServer;
+import net.andylizi.mojang.utils.Common;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * 使用 {@link FakeMojangServer} 对 {@link LocationSecurer} 的测试.
+ *
+ * @author andylizi
+ */
+public class LocationSecurerTest {
+    private FakeMojangServer server;
+    private LocationSecurer securer;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FakeMojangServer();
+        Common.Common.setApiBase(server.getBaseURL());
+        securer = new LocationSecurer(new MojangClient(null, false), (account, questionID) -> "answer");
+    }
+
+    @After
+    public void tearDown() {
+        Common.Common.setApiBase(Common.DEFAULT_API_BASE);
+        server.close();
+    }
+
+    private static List<Session> sessions(String... tokens) {
+        Session[] sessions = new Session[tokens.length];
+        for(int i = 0; i < tokens.length; i++)
+            sessions[i] = new Session("account" + i, tokens[i]);
+        return Arrays.asList(sessions);
+    }
+
+    @Test
+    public void testServerErrorFailsAtNeed() throws InterruptedException {
+        server.setErrorRate(1);
+        LocationSecurer.Report report = securer.secure(sessions("token0", "token1", "token2"));
+        assertEquals(3, report.getCount(LocationSecurer.Outcome.FAILED));
+        for(LocationSecurer.Result result : report.getResults()){
+            assertEquals(LocationSecurer.Stage.NEED, result.getFailedStage());
+            assertTrue(result.getError() instanceof MojangException);
+        }
+    }
+
+    @Test
+    public void testUnauthorizedFailsAtNeed() throws InterruptedException {
+        LocationSecurer.Report report = securer.secure(sessions(""));
+        LocationSecurer.Result result = report.getResults().get(0);
+        assertEquals(LocationSecurer.Outcome.FAILED, result.getOutcome());
+        assertEquals(LocationSecurer.Stage.NEED, result.getFailedStage());
+        assertTrue(result.getError() instanceof UnauthorizedException);
+    }
+
+    @Test
+    public void testRegistryRefreshesExpiredToken() throws InterruptedException {
+        SessionRegistry registry = new SessionRegistry(stale -> stale.withAccessToken("fresh"));
+        registry.put(new Session("account0", ""));
+        LocationSecurer.Report report = securer.secure(registry, Collections.singletonList("account0"));
+        assertEquals(LocationSecurer.Outcome.ALREADY_SECURED, report.getResults().get(0).getOutcome());
+        assertEquals("fresh", registry.get("account0").getAccessToken());
+    }
+
+    @Test
+    public void testSecure() throws InterruptedException {
+        server.setSecured(false);
+        LocationSecurer.Report report = securer.secure(sessions("token0"));
+        assertEquals(LocationSecurer.Outcome.SECURED, report.getResults().get(0).getOutcome());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.api.skin;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * {@link SkinRenderer} 的测试.
+ *
+ * @author andylizi
+ */
+public class SkinRendererTest {
+    private static BufferedImage skin(int height, int type, long seed) {
+        Random random = new Random(seed);
+        BufferedImage skin = new BufferedImage(SkinRenderer.SKIN_WIDTH, height, BufferedImage.TYPE_INT_ARGB);
+        for(int y = 0; y < height; y++){
+            for(int x = 0; x < SkinRenderer.SKIN_WIDTH; x++){
+                int alpha;
+                switch(random.nextInt(3)){
+                    case 0:
+                        alpha = 0;
+                        break;
+                    case 1:
+                        alpha = 0xff;
+                        break;
+                    default:
+                        alpha = random.nextInt(256);
+                }
+                skin.setRGB(x, y, (alpha << 24) | (random.nextInt() & 0xffffff));
+            }
+        }
+        if(type == BufferedImage.TYPE_INT_ARGB)
+            return skin;
+        BufferedImage converted = new BufferedImage(SkinRenderer.SKIN_WIDTH, height, type);
+        Graphics2D g2d = converted.createGraphics();
+        g2d.drawImage(skin, 0, 0, null);
+        g2d.dispose();
+        return converted;
+    }
+
+    /**
+     * 改为直接操作像素数组之前, 通过Graphics2D绘制的实现.
+     */
+    private static BufferedImage renderWithGraphics(BufferedImage skin, SkinModelType modelType) {
+        boolean slim = modelType == SkinModelType.SLIM;
+        BufferedImage preview = new BufferedImage(16, 32, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = preview.createGraphics();
+        g2d.drawImage(skin.getSubimage(8, 8, 8, 8), 4, 0, null); //head
+        g2d.drawImage(skin.getSubimage(20, 20, 8, 12), 4, 8, null); //body
+        g2d.drawImage(skin.getSubimage(44, 20, (slim ? 3 : 4), 12), (slim ? 1 : 0), 8, null); //right arm
+        g2d.drawImage(skin.getSubimage(44, 20, (slim ? 3 : 4), 12), 12, 8, null); //left arm
+        g2d.drawImage(skin.getSubimage(4, 20, 4, 12), 4, 20, null); //left leg
+        g2d.drawImage(skin.getSubimage(4, 20, 4, 12), 8, 20, null); //right leg
+
+        g2d.drawImage(skin.getSubimage(40, 8, 8, 8), 4, 0, null); //hat
+        if(skin.getHeight() == 64){
+            g2d.drawImage(skin.getSubimage(36, 52, (slim ? 3 : 4), 12), 12, 8, null); //left arm
+            g2d.drawImage(skin.getSubimage(20, 52, 4, 12), 8, 20, null); //left leg
+
+            g2d.drawImage(skin.getSubimage(20, 20 + 16, 8, 12), 4, 8, null); //body wear
+            g2d.drawImage(skin.getSubimage(52, 20 + 16 + 16, (slim ? 3 : 4), 12), 12, 8, null); //left arm wear
+            g2d.drawImage(skin.getSubimage(44, 20 + 16, (slim ? 3 : 4), 12), (slim ? 1 : 0), 8, null); //right arm wear
+            g2d.drawImage(skin.getSubimage(4, 52, 4, 12), 8, 20, null); //left leg wear
+            g2d.drawImage(skin.getSubimage(4, 20 + 16, 4, 12), 4, 20, null); //right leg wear
+        }
+        g2d.dispose();
+        return preview;
+    }
+
+    private static int[] argb(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private static void assertSameAsGraphics(int type) {
+        for(SkinModelType modelType : new SkinModelType[]{SkinModelType.CLASSIC, SkinModelType.SLIM}){
+            for(int height : new int[]{32, 64}){
+                for(long seed = 0; seed < 16; seed++){
+                    BufferedImage skin = skin(height, type, seed);
+                    assertArrayEquals(argb(renderWithGraphics(skin, modelType)), argb(SkinRenderer.render(skin, modelType)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIntArgbMatchesGraphics() {
+        assertSameAsGraphics(BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @Test
+    public void test4ByteAbgrMatchesGraphics() {
+        assertSameAsGraphics(BufferedImage.TYPE_4BYTE_ABGR);
+    }
+
+    @Test
+    public void testPixelsMatchGetRGB() {
+        int[] types = {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE, BufferedImage.TYPE_4BYTE_ABGR};
+        for(int type : types){
+            for(int height : new int[]{32, 64}){
+                BufferedImage skin = skin(height, type, height + type);
+                assertArrayEquals(argb(skin), SkinRenderer.pixels(skin, null));
+            }
+        }
+    }
+
+    @Test
+    public void testPixelsOfSubimage() {
+        BufferedImage atlas = skin(64, BufferedImage.TYPE_INT_ARGB_PRE, 1);
+        BufferedImage skin = new BufferedImage(128, 96, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = skin.createGraphics();
+        g2d.drawImage(atlas, 32, 16, null);
+        g2d.dispose();
+        BufferedImage sub = skin.getSubimage(32, 16, 64, 64);
+        assertArrayEquals(argb(sub), SkinRenderer.pixels(sub, new int[64 * 64]));
+    }
+}
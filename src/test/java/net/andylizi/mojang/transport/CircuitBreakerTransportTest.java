@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * {@link CircuitBreakerTransport} 的测试.
+ *
+ * @author andylizi
+ */
+public class CircuitBreakerTransportTest {
+    private static CircuitBreaker.State afterFailures(Exception error) throws IOException {
+        HttpTransport delegate = new HttpTransport(){
+            @Override
+            public HttpResponse execute(HttpRequest request) throws IOException {
+                if(error instanceof IOException)
+                    throw (IOException) error;
+                throw (RuntimeException) error;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        CircuitBreakerTransport transport = new CircuitBreakerTransport(delegate,
+                () -> new CircuitBreaker(0.5, 4, 4, 1, TimeUnit.MINUTES, 1));
+        HttpRequest request = new HttpRequest("GET", new URL("http://127.0.0.1/")).endpoint("test");
+        for(int i = 0; i < 8; i++){
+            try {
+                transport.execute(request);
+                fail("expected exception");
+            } catch (CircuitOpenException ex) {
+                break;
+            } catch (IOException | RuntimeException ex) {
+                assertSame(error, ex);
+            }
+        }
+        return transport.getCircuitBreaker("test").getState();
+    }
+
+    @Test
+    public void testLocalErrorsIgnored() throws IOException {
+        assertEquals(CircuitBreaker.State.CLOSED, afterFailures(new IOException("Timed out waiting for a connection to 127.0.0.1")));
+        assertEquals(CircuitBreaker.State.CLOSED, afterFailures(new UnknownHostException("api.mojang.com")));
+        assertEquals(CircuitBreaker.State.CLOSED, afterFailures(new IllegalArgumentException("Illegal character in header value")));
+    }
+
+    @Test
+    public void testConnectionErrorsCounted() throws IOException {
+        assertEquals(CircuitBreaker.State.OPEN, afterFailures(new ConnectException("Connection refused")));
+        assertEquals(CircuitBreaker.State.OPEN, afterFailures(new SocketTimeoutException("Read timed out")));
+        assertEquals(CircuitBreaker.State.OPEN, afterFailures(new IOException("Connection closed", new SocketException("Connection reset"))));
+    }
+}
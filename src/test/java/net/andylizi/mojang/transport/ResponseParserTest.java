@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.transport;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * {@link ResponseParser} 的测试.
+ *
+ * @author andylizi
+ */
+public class ResponseParserTest {
+    private static ByteBuffer buffer(String s) {
+        return ByteBuffer.wrap(s.getBytes(ISO_8859_1));
+    }
+
+    private static String body(ResponseParser parser) {
+        return new String(Arrays.copyOf(parser.getBody(), parser.getBodyLength()), ISO_8859_1);
+    }
+
+    @Test
+    public void testContentLength() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        parser.reset(false);
+        assertTrue(parser.parse(buffer("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello")));
+        assertEquals(200, parser.getStatusCode());
+        assertEquals("hello", body(parser));
+        assertTrue(parser.isKeepAlive());
+    }
+
+    @Test
+    public void testChunked() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        parser.reset(false);
+        ByteBuffer in = buffer("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5;ext=1\r\nhello\r\n7\r\n, world\r\n0\r\nX-Trailer: 1\r\n\r\n");
+        assertTrue(parser.parse(in));
+        assertFalse(in.hasRemaining());
+        assertEquals("hello, world", body(parser));
+        assertTrue(parser.isKeepAlive());
+    }
+
+    @Test
+    public void testChunkedSplitAcrossReads() throws IOException {
+        String response = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nA\r\n0123456789\r\n0\r\n\r\n";
+        ResponseParser parser = new ResponseParser();
+        parser.reset(false);
+        for(int i = 0; i < response.length() - 1; i++)
+            assertFalse(parser.parse(buffer(response.substring(i, i + 1))));
+        assertTrue(parser.parse(buffer(response.substring(response.length() - 1))));
+        assertEquals("0123456789", body(parser));
+    }
+
+    @Test
+    public void testCloseDelimited() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        parser.reset(false);
+        assertFalse(parser.parse(buffer("HTTP/1.1 200 OK\r\n\r\nuntil ")));
+        assertFalse(parser.parse(buffer("close")));
+        assertTrue(parser.onEndOfStream());
+        assertEquals("until close", body(parser));
+        assertFalse(parser.isKeepAlive());
+    }
+
+    @Test
+    public void testTruncatedBody() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        parser.reset(false);
+        assertFalse(parser.parse(buffer("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\nshort")));
+        assertFalse(parser.onEndOfStream());
+    }
+
+    @Test
+    public void testInformational() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        parser.reset(false);
+        assertTrue(parser.parse(buffer("HTTP/1.1 100 Continue\r\n\r\n"
+                + "HTTP/1.1 102 Processing\r\nX-Progress: 1\r\n\r\n"
+                + "HTTP/1.1 204 No Content\r\n\r\n")));
+        assertEquals(204, parser.getStatusCode());
+        assertNull(parser.getHeader("X-Progress"));
+        assertEquals(0, parser.getBodyLength());
+    }
+
+    @Test
+    public void testPipelinedLeftover() throws IOException {
+        ByteBuffer in = buffer("HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\none"
+                + "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n3\r\ntwo\r\n0\r\n\r\n"
+                + "HTTP/1.1 404 Not Found\r\nContent-Le");
+        ResponseParser parser = new ResponseParser();
+        parser.reset(false);
+        assertTrue(parser.parse(in));
+        assertEquals("one", body(parser));
+
+        parser.reset(false);
+        assertTrue(parser.parse(in));
+        assertEquals("two", body(parser));
+
+        parser.reset(false);
+        assertFalse(parser.parse(in));
+        assertFalse(in.hasRemaining());
+        assertTrue(parser.parse(buffer("ngth: 5\r\n\r\nthree")));
+        assertEquals(404, parser.getStatusCode());
+        assertEquals("three", body(parser));
+    }
+
+    @Test
+    public void testBodylessLeavesNextResponse() throws IOException {
+        ByteBuffer in = buffer("HTTP/1.1 200 OK\r\nContent-Length: 42\r\n\r\nHTTP/1.1 204 No Content\r\n\r\n");
+        ResponseParser parser = new ResponseParser();
+        parser.reset(true);
+        assertTrue(parser.parse(in));
+        assertEquals(0, parser.getBodyLength());
+        parser.reset(false);
+        assertTrue(parser.parse(in));
+        assertEquals(204, parser.getStatusCode());
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void testContentLengthTooLarge() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        parser.reset(false);
+        parser.parse(buffer("HTTP/1.1 200 OK\r\nContent-Length: " + (ResponseParser.MAX_BODY_LENGTH + 1) + "\r\n\r\n"));
+    }
+
+    @Test
+    public void testContentLengthNotPreallocated() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        parser.reset(false);
+        assertFalse(parser.parse(buffer("HTTP/1.1 200 OK\r\nContent-Length: " + ResponseParser.MAX_BODY_LENGTH + "\r\n\r\nx")));
+        assertTrue(parser.getBody().length < ResponseParser.MAX_BODY_LENGTH);
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void testChunkedTooLarge() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        parser.reset(false);
+        parser.parse(buffer("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + Integer.toHexString(ResponseParser.MAX_BODY_LENGTH + 1) + "\r\n"));
+        parser.parse(ByteBuffer.allocate(ResponseParser.MAX_BODY_LENGTH + 1));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 andylizi.
+ * 
+ * This library is free software: you can redistribute it and/or  
+ * modify it under the terms of the GNU Lesser General Public     
+ * License as published by the Free Software Foundation, either   
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the  
+ * GNU Lesser General Public License for more details.            
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see 
+ * <http://www.gnu.org/licenses/>.
+ */
+package net.andylizi.mojang.utils;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.andylizi.mojang.api.MojangResult;
+import net.andylizi.mojang.exception.TooManyRequestsException;
+import net.andylizi.mojang.transport.CircuitOpenException;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * {@link SingleFlight} 的测试.
+ *
+ * @author andylizi
+ */
+public class SingleFlightTest {
+    /**
+     * 以两个并发调用者执行同一个会失败的调用, 返回两者得到的结果. 调用只会执行一次.
+     */
+    private static MojangResult<?>[] coalesce(IOException error) throws InterruptedException {
+        SingleFlight<String> flights = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        MojangResult.Call<Object> call = () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                throw new AssertionError(ex);
+            }
+            throw error;
+        };
+        AtomicReference<MojangResult<?>> leader = new AtomicReference<>();
+        Thread thread = new Thread(() -> leader.set(MojangResult.of(() -> flights.execute("key", call, null))));
+        thread.start();
+        started.await();
+
+        AtomicReference<MojangResult<?>> waiter = new AtomicReference<>();
+        Thread waiting = new Thread(() -> waiter.set(MojangResult.of(() -> flights.execute("key", call, null))));
+        waiting.start();
+        while(waiting.getState() != Thread.State.WAITING)
+            Thread.yield();
+        release.countDown();
+        thread.join();
+        waiting.join();
+        assertEquals(1, calls.get());
+        return new MojangResult<?>[]{leader.get(), waiter.get()};
+    }
+
+    @Test
+    public void testTooManyRequestsCause() throws InterruptedException {
+        for(MojangResult<?> result : coalesce(new IOException("Too many requests", new TooManyRequestsException(3)))){
+            assertTrue(result.isMojangError(TooManyRequestsException.class));
+            assertEquals(3, ((TooManyRequestsException) result.getMojangError()).getRetryAfter());
+        }
+    }
+
+    @Test
+    public void testSubtypePreserved() throws InterruptedException {
+        MojangResult<?>[] results = coalesce(new UnknownHostException("api.mojang.com"));
+        assertTrue(results[1].getTransportError() instanceof UnknownHostException);
+        assertEquals("api.mojang.com", results[1].getTransportError().getMessage());
+        assertNotSame(results[0].getTransportError(), results[1].getTransportError());
+        assertSame(results[0].getTransportError(), results[1].getTransportError().getCause());
+    }
+
+    @Test
+    public void testCircuitOpen() throws InterruptedException {
+        MojangResult<?>[] results = coalesce(new CircuitOpenException("skin", 1000));
+        assertTrue(results[1].getTransportError() instanceof CircuitOpenException);
+        assertEquals(1000, ((CircuitOpenException) results[1].getTransportError()).getRetryAfter());
+    }
+}